@@ -0,0 +1,177 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.graphics.Rectangle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.patrikdufresne.planner.WeekLayoutCache.WeekLayout;
+
+/**
+ * Benchmark of the {@link PlannerLayoutEngine} : column layout and bounds of a
+ * week containing up to 100k events. Doesn't require a display.
+ * <p>
+ * The events are generated using one of the following distributions :
+ * <ul>
+ * <li>office : events of 30 minutes to 2 hours during the working hours of the
+ * week days, with a few all-day events</li>
+ * <li>meetings : events starting on a few hours of the day, creating large
+ * clusters of overlapping events</li>
+ * <li>uniform : events of 15 minutes to 4 hours anywhere in the week</li>
+ * </ul>
+ * Run with <code>mvn -P jmh test-compile exec:exec</code>.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlannerLayoutBenchmark {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final long DAY = 24 * HOUR;
+
+    @Param({ "office", "meetings", "uniform" })
+    public String distribution;
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int eventCount;
+
+    private PlannerLayoutEngine engine;
+
+    private long[] ends;
+
+    private int[] indices;
+
+    private long[] longEnds;
+
+    private long[] longStarts;
+
+    private long[] shortEnds;
+
+    private long[] shortStarts;
+
+    private long[] starts;
+
+    private WeekLayout weekLayout;
+
+    /**
+     * Compute the bounds of the events using the column layout. Both results
+     * are consumed, so none of the layouts is eliminated.
+     */
+    @Benchmark
+    public void bounds(Blackhole blackhole) {
+        blackhole.consume(engine.layoutEvents(longStarts, longEnds, weekLayout.longEventsLayout, true));
+        blackhole.consume(engine.layoutEvents(shortStarts, shortEnds, weekLayout.shortEventsLayout, false));
+    }
+
+    /**
+     * Split the events and compute the column layout.
+     */
+    @Benchmark
+    public WeekLayout columnLayout() {
+        return PlannerLayoutEngine.createWeekLayout(indices, starts, ends);
+    }
+
+    /**
+     * Generate the events of the week.
+     */
+    @Setup
+    public void setup() {
+        Calendar cal = new GregorianCalendar();
+        cal.clear();
+        cal.set(2013, Calendar.JUNE, 2);
+        long weekStart = cal.getTimeInMillis();
+
+        Random random = new Random(1234);
+        starts = new long[eventCount];
+        ends = new long[eventCount];
+        indices = new int[eventCount];
+        int longCount = 0;
+        for (int i = 0; i < eventCount; i++) {
+            long start;
+            long duration;
+            if ("office".equals(distribution)) {
+                if (random.nextInt(50) == 0) {
+                    // All-day or multi-day event
+                    start = weekStart + random.nextInt(7) * DAY;
+                    duration = (1 + random.nextInt(3)) * DAY;
+                } else {
+                    start = weekStart + (1 + random.nextInt(5)) * DAY + 8 * HOUR + random.nextInt(36) * 15 * MINUTE;
+                    duration = (2 + random.nextInt(7)) * 15 * MINUTE;
+                }
+            } else if ("meetings".equals(distribution)) {
+                int[] hours = new int[] { 9, 10, 13, 15 };
+                start = weekStart + (1 + random.nextInt(5)) * DAY + hours[random.nextInt(hours.length)] * HOUR;
+                duration = (1 + random.nextInt(4)) * 30 * MINUTE;
+            } else {
+                start = weekStart + random.nextInt(7 * 24 * 4) * 15 * MINUTE;
+                duration = (1 + random.nextInt(16)) * 15 * MINUTE;
+            }
+            starts[i] = start;
+            ends[i] = start + duration;
+            indices[i] = i;
+            if (!PlannerLayoutEngine.isShortEvent(starts[i], ends[i])) longCount++;
+        }
+
+        // Split the events as the planner does.
+        shortStarts = new long[eventCount - longCount];
+        shortEnds = new long[eventCount - longCount];
+        longStarts = new long[longCount];
+        longEnds = new long[longCount];
+        int s = 0, l = 0;
+        for (int i = 0; i < eventCount; i++) {
+            if (PlannerLayoutEngine.isShortEvent(starts[i], ends[i])) {
+                shortStarts[s] = starts[i];
+                shortEnds[s++] = ends[i];
+            } else {
+                longStarts[l] = starts[i];
+                longEnds[l++] = ends[i];
+            }
+        }
+        weekLayout = PlannerLayoutEngine.createWeekLayout(indices, starts, ends);
+
+        // Geometry of a maximized planner.
+        engine = new PlannerLayoutEngine();
+        engine.setWeek(cal);
+        int longEventRowCount = weekLayout.longEventsLayout.getColumnCount();
+        engine.setGeometry(new Rectangle(60, 80, 1400, 1920), new Rectangle(60, 30, 1400, 20 * longEventRowCount + 10), longEventRowCount);
+    }
+
+}
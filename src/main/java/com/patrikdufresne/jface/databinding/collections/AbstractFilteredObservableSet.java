@@ -433,6 +433,37 @@ public abstract class AbstractFilteredObservableSet extends AbstractObservableSe
         }
     }
 
+    /**
+     * Add and remove elements of the computed set and notify the listeners
+     * about the elements really added or removed. Used by sub classes able to
+     * compute the changes of the filter instead of calling
+     * {@link #makeDirty()}. Nothing is done if the set is not computed yet.
+     * 
+     * @param additions
+     *            the elements to add
+     * @param removals
+     *            the elements to remove
+     */
+    protected void updateSet(Collection additions, Collection removals) {
+        if (this.dirty) return;
+        Set<Object> added = new HashSet<Object>();
+        Set<Object> removed = new HashSet<Object>();
+        for (Object element : additions) {
+            if (this.cachedSet.add(element)) {
+                added.add(element);
+            }
+        }
+        for (Object element : removals) {
+            if (this.cachedSet.remove(element)) {
+                removed.add(element);
+            }
+        }
+        // Fire change
+        if (added.size() != 0 || removed.size() != 0) {
+            fireSetChange(Diffs.createSetDiff(added, removed));
+        }
+    }
+
     @Override
     public String toString() {
         getterCalled();
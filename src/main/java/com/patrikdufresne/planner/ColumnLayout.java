@@ -0,0 +1,239 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Assign a column to each time range so that time ranges sharing a column
+ * never intersect. This class is used by the {@link Planner} to layout the
+ * short and long events.
+ * <p>
+ * The time ranges are placed in the given order, each one into the first
+ * column where it fit (first-fit). This is the same assignment as filling the
+ * columns one by one with a greedy pass over the remaining time ranges.
+ * <p>
+ * Each column keep an ordered index of its time ranges (start time to end
+ * time). Since the time ranges of a column doesn't intersect, their end time
+ * are ordered the same way as their start time, so checking if a time range
+ * fit in a column is a single <code>lowerEntry()</code> lookup. The layout cost
+ * O(n * c * log n) where c is the number of columns, instead of the O(n²)
+ * pairwise comparison.
+ * <p>
+ * The time ranges are also grouped in clusters : the connected time ranges
+ * intersecting each other. Since a time range only share its columns with the
+ * time ranges of its cluster, each cluster may be layout independently using
+ * its own number of columns.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class ColumnLayout {
+
+    /**
+     * Compute the cluster of each time range. Two time ranges are in the same
+     * cluster if they intersect or if they both intersect a time range of the
+     * cluster.
+     *
+     * @param starts
+     *            the start time of each time range (in milliseconds)
+     * @param ends
+     *            the end time of each time range (in milliseconds)
+     * @return the cluster index of each time range, clusters are numbered by
+     *         start time
+     */
+    static int[] computeClusters(final long[] starts, final long[] ends) {
+        // Sort the time ranges by start time, then by end time, so a time
+        // range starting before the greatest end time intersect a previous
+        // one.
+        Integer[] order = new Integer[starts.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int i = a.intValue(), j = b.intValue();
+                if (starts[i] != starts[j]) return starts[i] < starts[j] ? -1 : 1;
+                if (ends[i] != ends[j]) return ends[i] < ends[j] ? -1 : 1;
+                return 0;
+            }
+        });
+        int[] clusters = new int[starts.length];
+        int cluster = -1;
+        long maxEnd = Long.MIN_VALUE;
+        for (Integer index : order) {
+            int i = index.intValue();
+            if (cluster == -1 || starts[i] >= maxEnd) {
+                cluster++;
+                maxEnd = ends[i];
+            } else {
+                maxEnd = Math.max(maxEnd, ends[i]);
+            }
+            clusters[i] = cluster;
+        }
+        return clusters;
+    }
+
+    /**
+     * The number of columns used by each cluster.
+     */
+    private final int[] clusterColumnCounts;
+
+    /**
+     * The cluster index of each time range.
+     */
+    private final int[] clusters;
+
+    /**
+     * The column index of each time range.
+     */
+    private final int[] columns;
+
+    /**
+     * For each column, an index of the start time to the greatest end time
+     * starting at this time.
+     */
+    private final List<TreeMap<Long, Long>> index = new ArrayList<TreeMap<Long, Long>>();
+
+    /**
+     * The index of the first column (after the time range's column) containing
+     * an intersecting time range, or the number of columns.
+     */
+    private final int[] extendTo;
+
+    /**
+     * Compute the layout of the given time ranges. The arrays must have the
+     * same length and each time range must be valid (start <= end).
+     *
+     * @param starts
+     *            the start time of each time range (in milliseconds)
+     * @param ends
+     *            the end time of each time range (in milliseconds)
+     */
+    ColumnLayout(long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException();
+        }
+        this.columns = new int[starts.length];
+        this.extendTo = new int[starts.length];
+
+        // Place each time range in the first column where it fit.
+        for (int i = 0; i < starts.length; i++) {
+            int col = 0;
+            while (col < this.index.size() && intersect(col, starts[i], ends[i])) {
+                col++;
+            }
+            if (col == this.index.size()) {
+                this.index.add(new TreeMap<Long, Long>());
+            }
+            TreeMap<Long, Long> column = this.index.get(col);
+            Long end = column.get(Long.valueOf(starts[i]));
+            if (end == null || end.longValue() < ends[i]) {
+                column.put(Long.valueOf(starts[i]), Long.valueOf(ends[i]));
+            }
+            this.columns[i] = col;
+        }
+
+        // Count the columns of each cluster.
+        this.clusters = computeClusters(starts, ends);
+        int clusterCount = 0;
+        for (int i = 0; i < starts.length; i++) {
+            clusterCount = Math.max(clusterCount, this.clusters[i] + 1);
+        }
+        this.clusterColumnCounts = new int[clusterCount];
+        for (int i = 0; i < starts.length; i++) {
+            this.clusterColumnCounts[this.clusters[i]] = Math.max(this.clusterColumnCounts[this.clusters[i]], this.columns[i] + 1);
+        }
+
+        // Check how many columns each time range may fill.
+        for (int i = 0; i < starts.length; i++) {
+            int col = this.columns[i] + 1;
+            while (col < this.index.size() && !intersect(col, starts[i], ends[i])) {
+                col++;
+            }
+            this.extendTo[i] = col;
+        }
+    }
+
+    /**
+     * Return the number of columns used by the cluster of the given time range.
+     * The time range never intersect a time range outside these columns.
+     *
+     * @param i
+     *            the time range index
+     * @return the number of columns
+     */
+    int getClusterColumnCount(int i) {
+        return this.clusterColumnCounts[this.clusters[i]];
+    }
+
+    /**
+     * Return the column index of the given time range.
+     *
+     * @param i
+     *            the time range index
+     * @return the column index
+     */
+    int getColumn(int i) {
+        return this.columns[i];
+    }
+
+    /**
+     * Return the number of columns required to layout the time ranges.
+     *
+     * @return the number of columns
+     */
+    int getColumnCount() {
+        return this.index.size();
+    }
+
+    /**
+     * Return the exclusive index of the last column the given time range may
+     * fill without intersecting other time ranges.
+     *
+     * @param i
+     *            the time range index
+     * @return the column index (exclusive)
+     */
+    int getExtendTo(int i) {
+        return this.extendTo[i];
+    }
+
+    /**
+     * Check if the given time range intersect a time range of the column. Two
+     * time ranges intersect if each one start before the other one end.
+     *
+     * @param col
+     *            the column index
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @return True if the time range intersect
+     */
+    private boolean intersect(int col, long start, long end) {
+        // The time range starting before the end with the greatest end time.
+        Entry<Long, Long> entry = this.index.get(col).lowerEntry(Long.valueOf(end));
+        return entry != null && start < entry.getValue().longValue();
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid used by the {@link Planner} to find the item located at a
+ * point.
+ * <p>
+ * Rectangles are added with an identifier (the item index). The first query
+ * build the grid : each cell hold the identifiers of the rectangles
+ * intersecting it. A lookup only check the rectangles of a single cell and
+ * return the greatest identifier, so the last item drawn wins.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class GridIndex {
+
+    /**
+     * Maximum number of cells in each direction.
+     */
+    private static final int MAX_CELL_COUNT = 256;
+
+    /**
+     * Cell dimension.
+     */
+    private int cellHeight;
+    private int cellWidth;
+
+    /**
+     * Number of rectangles added.
+     */
+    private int count = 0;
+
+    /**
+     * Number of cells in the grid.
+     */
+    private int cols;
+    private int rows;
+
+    /**
+     * Offset of each cell in <code>entries</code>. Null if the grid need to be
+     * build.
+     */
+    private int[] cellOffsets;
+
+    /**
+     * The rectangles indexes (in <code>rects</code>) of every cells.
+     */
+    private int[] entries;
+
+    /**
+     * The identifiers of each rectangle.
+     */
+    private int[] ids = new int[16];
+
+    /**
+     * Origin of the grid.
+     */
+    private int originX;
+    private int originY;
+
+    /**
+     * The rectangles (x, y, width, height).
+     */
+    private int[] rects = new int[64];
+
+    /**
+     * Create a new index.
+     *
+     * @param cellWidth
+     *            the cell width in pixel
+     * @param cellHeight
+     *            the cell height in pixel
+     */
+    GridIndex(int cellWidth, int cellHeight) {
+        this.cellWidth = Math.max(1, cellWidth);
+        this.cellHeight = Math.max(1, cellHeight);
+    }
+
+    /**
+     * Add a rectangle to the index.
+     *
+     * @param id
+     *            the identifier (must be positive)
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     */
+    void add(int id, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        if (this.count == this.ids.length) {
+            this.ids = Arrays.copyOf(this.ids, this.count * 2);
+            this.rects = Arrays.copyOf(this.rects, this.count * 8);
+        }
+        this.ids[this.count] = id;
+        this.rects[this.count * 4] = x;
+        this.rects[this.count * 4 + 1] = y;
+        this.rects[this.count * 4 + 2] = width;
+        this.rects[this.count * 4 + 3] = height;
+        this.count++;
+        this.cellOffsets = null;
+    }
+
+    /**
+     * Build the grid.
+     */
+    private void build() {
+        // Compute the grid area
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < this.count; i++) {
+            minX = Math.min(minX, this.rects[i * 4]);
+            minY = Math.min(minY, this.rects[i * 4 + 1]);
+            maxX = Math.max(maxX, this.rects[i * 4] + this.rects[i * 4 + 2]);
+            maxY = Math.max(maxY, this.rects[i * 4 + 1] + this.rects[i * 4 + 3]);
+        }
+        this.originX = minX;
+        this.originY = minY;
+        // Limit the grid size when the rectangles are spread.
+        if (this.count > 0) {
+            this.cellWidth = Math.max(this.cellWidth, (maxX - minX) / MAX_CELL_COUNT + 1);
+            this.cellHeight = Math.max(this.cellHeight, (maxY - minY) / MAX_CELL_COUNT + 1);
+        }
+        this.cols = this.count == 0 ? 0 : (maxX - minX + this.cellWidth - 1) / this.cellWidth;
+        this.rows = this.count == 0 ? 0 : (maxY - minY + this.cellHeight - 1) / this.cellHeight;
+
+        // Count the entries of each cell, then fill them.
+        this.cellOffsets = new int[this.cols * this.rows + 1];
+        for (int i = 0; i < this.count; i++) {
+            for (int row = firstRow(i); row <= lastRow(i); row++) {
+                for (int col = firstCol(i); col <= lastCol(i); col++) {
+                    this.cellOffsets[row * this.cols + col + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < this.cols * this.rows; cell++) {
+            this.cellOffsets[cell + 1] += this.cellOffsets[cell];
+        }
+        this.entries = new int[this.cellOffsets[this.cols * this.rows]];
+        int[] next = Arrays.copyOf(this.cellOffsets, this.cols * this.rows);
+        for (int i = 0; i < this.count; i++) {
+            for (int row = firstRow(i); row <= lastRow(i); row++) {
+                for (int col = firstCol(i); col <= lastCol(i); col++) {
+                    this.entries[next[row * this.cols + col]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the greatest identifier of the rectangles containing the given
+     * point.
+     *
+     * @param x
+     * @param y
+     * @return the identifier or -1 if not found
+     */
+    int find(int x, int y) {
+        if (this.cellOffsets == null) {
+            build();
+        }
+        if (x < this.originX || y < this.originY) return -1;
+        int col = (x - this.originX) / this.cellWidth;
+        int row = (y - this.originY) / this.cellHeight;
+        if (col >= this.cols || row >= this.rows) return -1;
+        int cell = row * this.cols + col;
+        int found = -1;
+        for (int e = this.cellOffsets[cell]; e < this.cellOffsets[cell + 1]; e++) {
+            int i = this.entries[e];
+            if (this.ids[i] > found
+                    && x >= this.rects[i * 4]
+                    && y >= this.rects[i * 4 + 1]
+                    && x < this.rects[i * 4] + this.rects[i * 4 + 2]
+                    && y < this.rects[i * 4 + 1] + this.rects[i * 4 + 3]) {
+                found = this.ids[i];
+            }
+        }
+        return found;
+    }
+
+    private int firstCol(int i) {
+        return (this.rects[i * 4] - this.originX) / this.cellWidth;
+    }
+
+    private int firstRow(int i) {
+        return (this.rects[i * 4 + 1] - this.originY) / this.cellHeight;
+    }
+
+    private int lastCol(int i) {
+        return (this.rects[i * 4] + this.rects[i * 4 + 2] - 1 - this.originX) / this.cellWidth;
+    }
+
+    private int lastRow(int i) {
+        return (this.rects[i * 4 + 1] + this.rects[i * 4 + 3] - 1 - this.originY) / this.cellHeight;
+    }
+
+}
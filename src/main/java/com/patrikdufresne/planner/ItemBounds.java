@@ -0,0 +1,213 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+/**
+ * Packed storage of the item bounds computed by the {@link Planner}. The
+ * rectangles of every item are stored in a single int array (x, y, width,
+ * height) instead of a rectangle array per item. Each item keep the offset and
+ * the number of its rectangles.
+ * <p>
+ * The rectangles of an item are overwritten when their number doesn't change.
+ * Otherwise, they are appended and the previous ones are left unused until the
+ * array is compacted.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class ItemBounds {
+
+    /**
+     * Offset of an item never layout.
+     */
+    static final int NONE = -1;
+
+    /**
+     * Number of unused values from which the array may be compacted.
+     */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    private int[] data = new int[64];
+
+    /**
+     * Number of values used, including the unused ones.
+     */
+    private int size;
+
+    /**
+     * Number of values not used anymore.
+     */
+    private int unused;
+
+    /**
+     * Compact the array if more than half of the values are unused. The offset
+     * of the given items are updated. The items not in the list must not have
+     * any bounds.
+     *
+     * @param items
+     *            the items (may contains null)
+     */
+    void compact(List<PlannerItem> items) {
+        if (this.unused < COMPACT_THRESHOLD || this.unused < this.size / 2) return;
+        int[] old = this.data;
+        this.data = new int[Math.max(64, (this.size - this.unused) * 2)];
+        this.size = 0;
+        this.unused = 0;
+        for (PlannerItem item : items) {
+            if (item == null || item.boundsCount == 0) continue;
+            int length = item.boundsCount * 4;
+            System.arraycopy(old, item.boundsOffset, this.data, this.size, length);
+            item.boundsOffset = this.size;
+            this.size += length;
+        }
+    }
+
+    /**
+     * Check if the rectangles of an item are equals to the given rectangles.
+     *
+     * @param offset
+     *            the item offset
+     * @param count
+     *            the number of rectangles of the item
+     * @param bounds
+     *            the rectangles
+     * @return True if equals
+     */
+    boolean equals(int offset, int count, Rectangle[] bounds) {
+        if (offset == NONE || count != bounds.length) return false;
+        for (int i = 0; i < count; i++) {
+            int j = offset + i * 4;
+            Rectangle bound = bounds[i];
+            if (this.data[j] != bound.x || this.data[j + 1] != bound.y || this.data[j + 2] != bound.width || this.data[j + 3] != bound.height) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return a copy of the rectangles of an item.
+     *
+     * @param offset
+     *            the item offset
+     * @param count
+     *            the number of rectangles of the item
+     * @return the rectangles or null if the item was never layout
+     */
+    Rectangle[] get(int offset, int count) {
+        if (offset == NONE) return null;
+        Rectangle[] bounds = new Rectangle[count];
+        for (int i = 0; i < count; i++) {
+            int j = offset + i * 4;
+            bounds[i] = new Rectangle(this.data[j], this.data[j + 1], this.data[j + 2], this.data[j + 3]);
+        }
+        return bounds;
+    }
+
+    /**
+     * Check if a rectangle of an item, enlarged by the given border,
+     * intersects the area.
+     *
+     * @param offset
+     *            the item offset
+     * @param count
+     *            the number of rectangles of the item
+     * @param area
+     *            the area
+     * @param border
+     *            the border width
+     * @return True if one of the rectangles intersect the area
+     */
+    boolean intersects(int offset, int count, Rectangle area, int border) {
+        for (int i = 0; i < count; i++) {
+            int j = offset + i * 4;
+            if (area.intersects(this.data[j], this.data[j + 1], this.data[j + 2] + border, this.data[j + 3] + border)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release the rectangles of an item.
+     *
+     * @param offset
+     *            the item offset
+     * @param count
+     *            the number of rectangles of the item
+     */
+    void release(int offset, int count) {
+        if (offset == NONE) return;
+        this.unused += count * 4;
+    }
+
+    /**
+     * Store the rectangles of an item. The previous rectangles are
+     * overwritten if their number is the same.
+     *
+     * @param offset
+     *            the item offset
+     * @param count
+     *            the number of rectangles of the item
+     * @param bounds
+     *            the new rectangles
+     * @return the new offset of the item
+     */
+    int set(int offset, int count, Rectangle[] bounds) {
+        if (offset == NONE || count != bounds.length) {
+            release(offset, count);
+            offset = this.size;
+            this.size += bounds.length * 4;
+            if (this.size > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(this.size, this.data.length * 2));
+            }
+        }
+        for (int i = 0; i < bounds.length; i++) {
+            int j = offset + i * 4;
+            this.data[j] = bounds[i].x;
+            this.data[j + 1] = bounds[i].y;
+            this.data[j + 2] = bounds[i].width;
+            this.data[j + 3] = bounds[i].height;
+        }
+        return offset;
+    }
+
+    /**
+     * Move the rectangles of an item.
+     *
+     * @param offset
+     *            the item offset
+     * @param count
+     *            the number of rectangles of the item
+     * @param dx
+     *            the horizontal distance
+     * @param dy
+     *            the vertical distance
+     */
+    void translate(int offset, int count, int dx, int dy) {
+        for (int i = 0; i < count; i++) {
+            int j = offset + i * 4;
+            this.data[j] += dx;
+            this.data[j + 1] += dy;
+        }
+    }
+
+}
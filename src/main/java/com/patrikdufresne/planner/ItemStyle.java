@@ -0,0 +1,105 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+
+/**
+ * Immutable colors and font of a {@link PlannerItem}. Most items share a few
+ * combinations of colors, so the styles are deduplicated and each item only
+ * keep a reference to its style. The resources are compared by identity: two
+ * colors with the same RGB are still distinct resources and each one may be
+ * disposed by its owner.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class ItemStyle {
+
+    /**
+     * The style of an item without colors and font.
+     */
+    static final ItemStyle DEFAULT = new ItemStyle(null, null, null, null);
+
+    /**
+     * The styles in use. A style is released once no item refer to it.
+     */
+    private static final Map<ItemStyle, WeakReference<ItemStyle>> STYLES = new WeakHashMap<ItemStyle, WeakReference<ItemStyle>>();
+
+    /**
+     * Return the shared style with the given colors and font.
+     *
+     * @param background
+     *            the background color (or null)
+     * @param borderColor
+     *            the border color (or null)
+     * @param foreground
+     *            the foreground color (or null)
+     * @param font
+     *            the font (or null)
+     * @return the style
+     */
+    static synchronized ItemStyle valueOf(Color background, Color borderColor, Color foreground, Font font) {
+        ItemStyle style = new ItemStyle(background, borderColor, foreground, font);
+        if (style.equals(DEFAULT)) return DEFAULT;
+        WeakReference<ItemStyle> ref = STYLES.get(style);
+        ItemStyle shared = ref != null ? ref.get() : null;
+        if (shared != null) return shared;
+        STYLES.put(style, new WeakReference<ItemStyle>(style));
+        return style;
+    }
+
+    final Color background;
+
+    final Color borderColor;
+
+    final Font font;
+
+    final Color foreground;
+
+    private ItemStyle(Color background, Color borderColor, Color foreground, Font font) {
+        this.background = background;
+        this.borderColor = borderColor;
+        this.foreground = foreground;
+        this.font = font;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof ItemStyle)) return false;
+        ItemStyle other = (ItemStyle) obj;
+        return this.background == other.background
+                && this.borderColor == other.borderColor
+                && this.foreground == other.foreground
+                && this.font == other.font;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = System.identityHashCode(this.background);
+        result = 31 * result + System.identityHashCode(this.borderColor);
+        result = 31 * result + System.identityHashCode(this.foreground);
+        result = 31 * result + System.identityHashCode(this.font);
+        return result;
+    }
+
+}
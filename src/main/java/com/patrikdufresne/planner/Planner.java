@@ -17,10 +17,19 @@ package com.patrikdufresne.planner;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -31,10 +40,10 @@ import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Path;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
-import org.eclipse.swt.graphics.TextLayout;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
@@ -44,7 +53,25 @@ import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.ScrollBar;
 import org.eclipse.swt.widgets.TypedListener;
 
+import com.patrikdufresne.planner.WeekLayoutCache.WeekLayout;
+import com.patrikdufresne.planner.internal.IntervalIndex;
+
 /**
+ * Instances of this class implement a planner displaying the events (items)
+ * of a week.
+ * <dl>
+ * <dt><b>Styles:</b></dt>
+ * <dd>BORDER, H_SCROLL, V_SCROLL, VIRTUAL</dd>
+ * <dt><b>Events:</b></dt>
+ * <dd>Selection, DefaultSelection, Modify, SetData</dd>
+ * </dl>
+ * <p>
+ * Note: With the VIRTUAL style, the planner only keeps the time range of the
+ * items. The items are created when they are displayed in the current week
+ * and the SetData event is sent the first time an item is drawn or returned
+ * by the planner. Use {@link #setItemCount(int)} and
+ * {@link #setItemTimeRange(int, Date, Date)} to define the items.
+ * </p>
  * 
  * @author patapouf
  * 
@@ -54,7 +81,7 @@ public class Planner extends Canvas {
     /**
      * Define the number of column in week style (value 7).
      */
-    private static final int CELL_COL_COUNT = 7;
+    private static final int CELL_COL_COUNT = PlannerLayoutEngine.COLUMN_COUNT;
     /**
      * Define the minimum cell height for week style (in px).
      */
@@ -63,16 +90,17 @@ public class Planner extends Canvas {
      * Define the minimum cell width in week style (in px).
      */
     private static final int CELL_MINIMUM_WIDTH = 90;
+
     /**
-     * Define the number of row in week style (value 48)
+     * Default number of displayed items from which the column layout is
+     * computed in a worker thread.
      */
-    private static final int CELL_ROW_COUNT = 48;
+    private static final int DEFAULT_LAYOUT_THRESHOLD = 2000;
 
     /**
-     * In a situation where the cell are fill completely, we need a little space
-     * to let the user create a new event.
+     * Bounds shared by the items not displayed.
      */
-    private static final int CELL_SPACING = 10;
+    private static final Rectangle[] EMPTY_BOUNDS = new Rectangle[0];
 
     /**
      * Define the line width of the grid.
@@ -83,12 +111,32 @@ public class Planner extends Canvas {
      * Define the item's border weight
      */
     private static final int ITEM_BORDER = 1;
+
+    /**
+     * Item rectangles narrower or lower than this size (in px) are drawn as
+     * plain filled rectangles.
+     */
+    private static final int ITEM_MINIMUM_DETAIL_SIZE = 5;
     /**
      * Define the height of a long event cell.
      */
     private static final int LONGEVENT_MINIMUM_CELL_HEIGHT = 20;
 
-    private static final int LONGEVENT_TRESHOLD = 1000 * 60 * 60 * 24;
+    /**
+     * Maximum duration of a row (in minutes).
+     */
+    private static final int MAXIMUM_ROW_DURATION = 120;
+
+    /**
+     * Minimum duration of a row (in minutes).
+     */
+    private static final int MINIMUM_ROW_DURATION = 15;
+
+    /**
+     * Number of milliseconds per minute.
+     */
+    private static final long MINUTE = 60 * 1000;
+
     /**
      * Page increment page for the scroll bars.
      */
@@ -97,26 +145,80 @@ public class Planner extends Canvas {
     private static final int SPACING = 2;
 
     /**
-     * Check if the two time range intersect.
+     * Minimum number of items whose time range changed since the time index
+     * was created from which the time index is created again.
+     */
+    private static final int TIME_INDEX_THRESHOLD = 64;
+
+    /**
+     * Value used for the time range of a virtual item not yet defined. Also
+     * ignored by {@link IntervalIndex}.
+     */
+    static final long UNDEFINED_TIME = Long.MIN_VALUE;
+
+    /**
+     * Number of week layouts kept in cache.
+     */
+    private static final int WEEK_LAYOUT_CACHE_SIZE = 8;
+
+    /**
+     * Worker thread shared by the planners to compute the layout. Created on
+     * first use.
+     */
+    private static ExecutorService defaultLayoutExecutor;
+
+    /**
+     * Return the worker thread shared by the planners.
+     */
+    private static synchronized Executor getDefaultLayoutExecutor() {
+        if (defaultLayoutExecutor == null) {
+            defaultLayoutExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Planner layout"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return defaultLayoutExecutor;
+    }
+
+    /**
+     * Copy the given array into a new array of the given length.
      * 
-     * @param start1
-     *            the start time for the first range
-     * @param end1
-     *            the endtime for the first range
-     * @param start2
-     *            the start time for the second range
-     * @param end2
-     *            the end time for the second range
-     * @return True if the two time range intersect.
+     * @param array
+     *            the array to copy
+     * @param length
+     *            the new length
+     * @return the new array
      */
-    private static boolean intersect(Date start1, Date end1, Date start2, Date end2) {
-        // TODO Use before & after function.
-        if (start1 == null || end1 == null || start2 == null || end2 == null || start1.getTime() > end1.getTime() || start2.getTime() > end2.getTime()) {
-            return false;
+    private static long[] copyOf(long[] array, int length) {
+        long[] newArray = new long[length];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, length));
+        if (length > array.length) {
+            Arrays.fill(newArray, array.length, length, UNDEFINED_TIME);
         }
-        return start2.getTime() < end1.getTime() && start1.getTime() < end2.getTime();
+        return newArray;
     }
 
+    /**
+     * Image of the static part of the planner (background, grid, hours and
+     * headers).
+     */
+    private Image backgroundImage;
+
+    /**
+     * The values used to draw the background image. The image is created again
+     * when one of them changed.
+     */
+    private List<Object> backgroundImageKey;
+
+    /**
+     * The horizontal and vertical scroll offsets of the background image.
+     */
+    private Point backgroundImageOffset;
+
     /**
      * True if a border around the widget is visible.
      */
@@ -142,6 +244,11 @@ public class Planner extends Canvas {
      */
     private Calendar curDateSelection;
 
+    /**
+     * The items to redraw when the update ends, each one once.
+     */
+    private Set<PlannerItem> damagedItems = new LinkedHashSet<PlannerItem>();
+
     private int firstDayOfWeek = Calendar.SUNDAY;
     /**
      * Define the fixed location of the grid.
@@ -160,10 +267,57 @@ public class Planner extends Canvas {
 
     private boolean inDispose = false;
 
+    /**
+     * The rectangles of every item, packed in a single array.
+     */
+    private ItemBounds itemBounds = new ItemBounds();
+
+    /**
+     * Index of the item bounds used for hit testing. Null if it need to be
+     * rebuild.
+     */
+    private GridIndex itemIndex;
+
     /**
      * Sets of item to display.
      */
     private List<PlannerItem> items = new ArrayList<PlannerItem>();
+
+    /**
+     * Incremented each time the items, their order or their time ranges
+     * change. Used to invalidate the cached week layouts.
+     */
+    private long itemsVersion = 0;
+
+    /**
+     * True if the items need to be layout when the update ends.
+     */
+    private boolean layoutDirty = false;
+
+    /**
+     * True if the layout required by a SetData event received while painting
+     * is scheduled.
+     */
+    private boolean layoutScheduled = false;
+
+    /**
+     * The executor used to compute the layout of large weeks. Null to use the
+     * default worker thread.
+     */
+    private Executor layoutExecutor;
+
+    /**
+     * Incremented each time the items need to be layout. Used to discard the
+     * layout computed in a worker thread if it's outdated.
+     */
+    private int layoutGeneration = 0;
+
+    /**
+     * Number of displayed items from which the column layout is computed in a
+     * worker thread.
+     */
+    private int layoutThreshold = DEFAULT_LAYOUT_THRESHOLD;
+
     /**
      * Define the fixed location of the left area.
      */
@@ -176,11 +330,6 @@ public class Planner extends Canvas {
 
     private Listener listener;
 
-    /**
-     * Define the cell spacing required for long event.
-     */
-    private int LONG_EVENT_CELL_SPACING = 10;
-
     /**
      * Define the height of long event cells.
      */
@@ -191,6 +340,17 @@ public class Planner extends Canvas {
      */
     private int longEventCellWidth;
 
+    /**
+     * Height of a line of text using the item font. Rectangles lower than
+     * this height doesn't show the item text.
+     */
+    private int itemTextHeight;
+
+    /**
+     * Compute the bounds of the items displayed in the week.
+     */
+    PlannerLayoutEngine layoutEngine = new PlannerLayoutEngine();
+
     /**
      * Define the scrolled location of the long event.
      */
@@ -217,11 +377,45 @@ public class Planner extends Canvas {
 
     private Font oldFont;
 
+    /**
+     * True while the items are drawn. The visible items are iterated by the
+     * paint, so they must not be layout in the meantime.
+     */
+    private boolean painting = false;
+
+    /**
+     * True to compute the layout of the previous and next weeks when the user
+     * interface is idle.
+     */
+    private boolean prefetchAdjacentWeeks = false;
+
+    /**
+     * True if the layout of the adjacent weeks is scheduled.
+     */
+    private boolean prefetchScheduled = false;
+
+    /**
+     * True if the whole planner need to be redrawn when the update ends.
+     */
+    private boolean redrawDirty = false;
+
     /**
      * Define the select item's index.
      */
     private int selectedIndex = -1;
 
+    /**
+     * Index of the items time range used to find the items displayed. Null if
+     * it need to be rebuild.
+     */
+    private IntervalIndex timeIndex;
+
+    /**
+     * The index of the items created or moved since <code>timeIndex</code>
+     * was created. Those items are checked individually.
+     */
+    private BitSet timeIndexChanges = new BitSet();
+
     /**
      * Define the starting time displayed by this planner. This is define
      * according to the planner style.
@@ -244,11 +438,48 @@ public class Planner extends Canvas {
      */
     private Rectangle topScrollRect = new Rectangle(0, 0, 0, 0);
 
+    /**
+     * Number of nested updates in progress.
+     * 
+     * @see #beginUpdate()
+     */
+    private int updateCount = 0;
+
     /**
      * Define the vertical offset (according to the scroll bar).
      */
     private int verticalScrollOffset = 0;
 
+    /**
+     * True if the planner was created with VIRTUAL style.
+     */
+    private boolean virtual;
+
+    /**
+     * The end time of each item (in virtual mode).
+     */
+    private long[] virtualEndTimes = new long[0];
+
+    /**
+     * The start time of each item (in virtual mode).
+     */
+    private long[] virtualStartTimes = new long[0];
+
+    /**
+     * The index of each visible item (as computed by the last layout).
+     */
+    private int[] visibleIndices = new int[0];
+
+    /**
+     * The items displayed in the current time range, ordered by index.
+     */
+    private List<PlannerItem> visibleItems = new ArrayList<PlannerItem>();
+
+    /**
+     * The recent week layouts.
+     */
+    private WeekLayoutCache weekLayouts = new WeekLayoutCache(WEEK_LAYOUT_CACHE_SIZE);
+
     /**
      * Create a new planner
      * 
@@ -264,6 +495,7 @@ public class Planner extends Canvas {
 
         // Keep an boolean value to know if a border is visible.
         borderVisible = (style & SWT.BORDER) != 0;
+        virtual = (style & SWT.VIRTUAL) != 0;
 
         // Set a default look
         look = new DefaultPlannerLook();
@@ -287,6 +519,24 @@ public class Planner extends Canvas {
         return item.getToolTipText();
     }
 
+    /**
+     * Return the item at the given index. In virtual mode, the item is created
+     * if required, without sending the SetData event.
+     * 
+     * @param index
+     *            the item index
+     * @return the item
+     */
+    PlannerItem _getItem(int index) {
+        PlannerItem item = items.get(index);
+        if (item != null) return item;
+        item = new PlannerItem(this, SWT.NONE, index, false);
+        item.startTime = virtualStartTimes[index];
+        item.endTime = virtualEndTimes[index];
+        items.set(index, item);
+        return item;
+    }
+
     void _setToolTipText(int x, int y) {
         String oldTip = getToolTipText();
         String newTip = _getToolTip(x, y);
@@ -311,6 +561,29 @@ public class Planner extends Canvas {
         addListener(SWT.DefaultSelection, typedListener);
     }
 
+    /**
+     * Starts a batch update. Until the matching call to {@link #endUpdate()},
+     * the changes made to the items only mark the planner as dirty. The items
+     * are layout and the planner is redrawn once when the outermost update
+     * ends.
+     * <p>
+     * Calls to this function may be nested and every call must be followed by
+     * a call to {@link #endUpdate()}.
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #endUpdate()
+     */
+    public void beginUpdate() {
+        checkWidget();
+        updateCount++;
+    }
+
     /**
      * This function is used to calculate the current font size for the given
      * text
@@ -346,6 +619,45 @@ public class Planner extends Canvas {
         }
     }
 
+    /**
+     * In virtual mode, send the SetData event to let the client set the item's
+     * attributes, if not already done.
+     * 
+     * @param item
+     *            the item
+     * @param index
+     *            the item index
+     * @return False if the item was disposed by the client.
+     */
+    boolean checkData(PlannerItem item, int index) {
+        if (!virtual || item.cached) return true;
+        item.cached = true;
+        Event event = new Event();
+        event.item = item;
+        event.index = index;
+        // The attributes set by the client doesn't require a redraw since the
+        // item is about to be drawn. Only a time range change need a layout.
+        updateCount++;
+        try {
+            notifyListeners(SWT.SetData, event);
+        } finally {
+            updateCount--;
+        }
+        if (isDisposed() || item.isDisposed()) return false;
+        if (updateCount == 0) {
+            redrawDirty = false;
+            damagedItems.clear();
+            if (layoutDirty && painting) {
+                // The layout would change the visible items being drawn.
+                scheduleLayout();
+            } else if (layoutDirty) {
+                layoutDirty = false;
+                updateItems();
+            }
+        }
+        return true;
+    }
+
     /**
      * Scrolls down the text to use new space made available by a resize or by
      * deleted lines.
@@ -373,40 +685,63 @@ public class Planner extends Canvas {
     }
 
     /**
-     * Return the column index for the given day of week value.
+     * Clears the item at the given index. In virtual mode, the SetData event is
+     * sent again the next time the item is drawn or requested.
+     * 
+     * @param index
+     *            the index of the item to clear
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_INVALID_RANGE - if the index is out of range</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #setItemCount(int)
+     */
+    public void clear(int index) {
+        checkWidget();
+        if (index < 0 || index >= items.size()) SWT.error(SWT.ERROR_INVALID_RANGE);
+        PlannerItem item = items.get(index);
+        if (item != null && item.cached) {
+            item.cached = false;
+            handleItemChange(item, false);
+        }
+    }
+
+    /**
+     * Clears all the items. In virtual mode, the SetData event is sent again
+     * the next time an item is drawn or requested.
      * 
-     * @param dayOfWeek
-     *            the day of week value as return by
-     *            Calendar.get(Calendar.DAY_OF_WEEK)
-     * @return The column index
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #clear(int)
      */
-    private int colIdx(int dayOfWeek) {
-        int diff = dayOfWeek - this.firstDayOfWeek;
-        if (diff >= 0) {
-            return diff;
+    public void clearAll() {
+        checkWidget();
+        for (PlannerItem item : items) {
+            if (item != null) item.cached = false;
         }
-        return CELL_COL_COUNT - diff;
+        handleItemChange(null, false);
     }
 
     public Point computeSize(int wHint, int hHint, boolean changed) {
         Point size = new Point(wHint, hHint);
         size.x = Math.max(wHint, getLeftAreaWidth() + CELL_COL_COUNT * CELL_MINIMUM_WIDTH);
-        size.y = Math.max(hHint, CELL_ROW_COUNT * CELL_MINIMUM_HEIGHT);
+        size.y = Math.max(hHint, layoutEngine.getRowCount() * CELL_MINIMUM_HEIGHT);
         return size;
     }
 
-    /**
-     * Create a new calendar instance initialized with the first day of week.
-     * 
-     * @return
-     */
-    private Calendar createCalendar(Date val) {
-        Calendar cal = Calendar.getInstance();
-        cal.setFirstDayOfWeek(this.firstDayOfWeek);
-        cal.setTime(val);
-        return cal;
-    }
-
     /**
      * Called by the PlannerItem constructor to notify this class about the item
      * being create in this widget.
@@ -420,11 +755,54 @@ public class Planner extends Canvas {
         if (0 > index || index > getItemCount()) SWT.error(SWT.ERROR_INVALID_RANGE);
         item.parent = this;
 
+        // An item appended doesn't move the other items in the time index.
+        if (index == items.size()) {
+            timeIndexChanges.set(index);
+        } else {
+            timeIndex = null;
+        }
         items.add(index, item);
+        if (virtual) {
+            // Keep the time ranges aligned with the items.
+            virtualStartTimes = copyOf(virtualStartTimes, items.size());
+            virtualEndTimes = copyOf(virtualEndTimes, items.size());
+            System.arraycopy(virtualStartTimes, index, virtualStartTimes, index + 1, items.size() - index - 1);
+            System.arraycopy(virtualEndTimes, index, virtualEndTimes, index + 1, items.size() - index - 1);
+            virtualStartTimes[index] = UNDEFINED_TIME;
+            virtualEndTimes[index] = UNDEFINED_TIME;
+            item.cached = true;
+        }
 
-        // Redraw all
-        updateItems();
-        redraw();
+        // Layout the items, the new bounds will be redrawn
+        handleItemChange(item, true);
+    }
+
+    /**
+     * Create the index of the items time range. In virtual mode, the time range
+     * of the created items are copied to the virtual time ranges. The items
+     * never layout get empty bounds.
+     * 
+     * @return the index
+     */
+    private IntervalIndex createTimeIndex() {
+        long[] starts = virtual ? virtualStartTimes : new long[items.size()];
+        long[] ends = virtual ? virtualEndTimes : new long[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            PlannerItem item = items.get(i);
+            if (item == null) continue;
+            if (item.startTime != UNDEFINED_TIME && item.endTime != UNDEFINED_TIME) {
+                starts[i] = item.startTime;
+                ends[i] = item.endTime;
+            } else {
+                starts[i] = UNDEFINED_TIME;
+                ends[i] = UNDEFINED_TIME;
+            }
+            if (item.boundsOffset == ItemBounds.NONE) {
+                setItemBounds(item, EMPTY_BOUNDS);
+            }
+        }
+        timeIndexChanges.clear();
+        return new IntervalIndex(starts, ends);
     }
 
     /**
@@ -439,25 +817,68 @@ public class Planner extends Canvas {
         int index = indexOf(item);
         if (index == -1) return;
 
+        // Removing the last item doesn't move the other items in the time
+        // index, its index is ignored until an item is appended.
+        if (index == items.size() - 1) {
+            timeIndexChanges.set(index);
+        } else {
+            timeIndex = null;
+        }
+
+        // Redraw the area previously covered by the item
+        redrawBounds(getItemBounds(item));
+
+        if (virtual) {
+            System.arraycopy(virtualStartTimes, index + 1, virtualStartTimes, index, items.size() - index - 1);
+            System.arraycopy(virtualEndTimes, index + 1, virtualEndTimes, index, items.size() - index - 1);
+            virtualStartTimes = copyOf(virtualStartTimes, items.size() - 1);
+            virtualEndTimes = copyOf(virtualEndTimes, items.size() - 1);
+        }
+
         if (items.size() == 1) {
             items.clear();
             selectedIndex = -1;
             setToolTipText(null);
-            updateItems();
-            redraw();
+            handleItemChange(item, true);
             return;
         }
 
         items.remove(index);
         if (index <= selectedIndex) selectedIndex--;
 
-        updateItems();
-        redraw();
+        handleItemChange(item, true);
+    }
+
+    /**
+     * Draw the static part of the planner within the given bounds : the
+     * background, the grid, the hours and the headers.
+     * 
+     * @param gc
+     * @param bounds
+     *            the bounds to draw
+     */
+    private void drawBackground(GC gc, Rectangle bounds) {
+        // Use the same default as the paint event
+        gc.setFont(getFont());
+        gc.setBackground(getBackground());
+        gc.setForeground(getForeground());
+        gc.setClipping(bounds);
+
+        // Draw the background
+        gc.fillRectangle(bounds);
+
+        // Draw the grid area
+        drawGrid(gc);
+
+        // Draw the left area (if required)
+        drawLeft(gc);
+
+        // Draw the top area
+        drawTop(gc);
     }
 
     /**
-     * This function is used to draw the grid area. It's also draw the item
-     * contains in it.
+     * This function is used to draw the grid area.
      * 
      * @param gc
      */
@@ -480,18 +901,15 @@ public class Planner extends Canvas {
         int y = gridScrollRect.y;
         int width = gridScrollRect.width * 7;
         int height = gridScrollRect.height;
-        // In DAY or WEEK style, every two line are drawn in dot
-        // style
-        for (int i = 0; i <= CELL_ROW_COUNT; i += 2) {
-            int lineY = y + i * cellHeight;
-            path.moveTo(x, lineY);
-            path.lineTo(x + width, lineY);
-        }
+        // The lines between two hours are drawn in dot style
+        int rowCount = layoutEngine.getRowCount();
+        int rowsPerHour = getRowsPerHour();
         Path dottedPath = new Path(gc.getDevice());
-        for (int i = 1; i <= CELL_ROW_COUNT; i += 2) {
+        for (int i = 0; i <= rowCount; i++) {
             int lineY = y + i * cellHeight;
-            dottedPath.moveTo(x, lineY);
-            dottedPath.lineTo(x + width, lineY);
+            Path linePath = i % rowsPerHour == 0 ? path : dottedPath;
+            linePath.moveTo(x, lineY);
+            linePath.lineTo(x + width, lineY);
         }
         gc.setLineStyle(SWT.LINE_DOT);
         gc.drawPath(dottedPath);
@@ -519,24 +937,13 @@ public class Planner extends Canvas {
         gc.setLineStyle(gcLineStyle);
         gc.setLineWidth(gcLineWidth);
 
-        // Draw items
-        for (int i = 0; i < items.size(); i++) {
-            PlannerItem item = items.get(i);
-            if (item.bounds != null && item.bounds.length > 0 && !item.inLongEventCells) {
-                drawItem(gc, item, false, i == selectedIndex);
-            }
-        }
-
-        // Restore old values
-        gc.setBackground(gcBackground);
-        gc.setForeground(gcForeground);
-        gc.setLineStyle(gcLineStyle);
-        gc.setLineWidth(gcLineWidth);
-
     }
 
     /**
-     * Draw the given item into the grid area.
+     * Draw the given item into the grid area. The level of detail depends on
+     * the size of each rectangle : the small rectangles are filled without
+     * border and the text is only drawn in rectangles high enough to show a
+     * line of text.
      * 
      * @param gc
      * @param item
@@ -547,22 +954,47 @@ public class Planner extends Canvas {
         // Keep reference to old values
         Color gcBackground = gc.getBackground();
         Color gcForeground = gc.getForeground();
+
+        // Fill the small rectangles. Neither the text nor the font are
+        // required, so a crowded week is painted quickly at low zoom levels.
+        ItemStyle style = item.style;
+        Rectangle[] bounds = getItemBounds(item);
+        if (selected) {
+            gc.setBackground(look.getSelectedItemColor(this));
+        } else {
+            gc.setBackground(style.background != null ? style.background : look.getItemColor(this));
+        }
+        int detailed = 0;
+        for (Rectangle bound : bounds) {
+            if (bound.width < ITEM_MINIMUM_DETAIL_SIZE || bound.height < ITEM_MINIMUM_DETAIL_SIZE) {
+                gc.fillRectangle(bound.x, bound.y, bound.width + ITEM_BORDER, bound.height + ITEM_BORDER);
+            } else {
+                detailed++;
+            }
+        }
+        if (detailed == 0) {
+            gc.setBackground(gcBackground);
+            return;
+        }
+
         int gcLineWidth = gc.getLineWidth();
         Font gcFont = gc.getFont();
         Rectangle gcClipping = gc.getClipping();
 
-        // Create hours string
-        String hours = look.formatItemTimeRange(this, item.startTime, item.endTime, small);
+        // The hours and text to draw (e.g.: 11am - 2pm) are formatted when
+        // first required.
+        String text = null;
 
         // Draw each bound for the current item
-        if (item.font != null) {
-            gc.setFont(item.font);
+        if (style.font != null) {
+            gc.setFont(style.font);
         } else {
             // Set it to the default item font
             gc.setFont(look.getItemFont(this));
         }
-        TextLayout textLayout = new TextLayout(gc.getDevice());
-        for (Rectangle bound : item.bounds) {
+        for (Rectangle bound : bounds) {
+            if (bound.width < ITEM_MINIMUM_DETAIL_SIZE || bound.height < ITEM_MINIMUM_DETAIL_SIZE) continue;
+
             /*
              * Draw rectangle
              */
@@ -570,25 +1002,29 @@ public class Planner extends Canvas {
                 gc.setBackground(look.getSelectedItemColor(this));
                 gc.setForeground(look.getSelectedItemBorderColor(this));
             } else {
-                gc.setBackground(item.background != null ? item.background : look.getItemColor(this));
-                gc.setForeground(item.borderColor != null ? item.borderColor : look.getItemBorderColor(this));
+                gc.setBackground(style.background != null ? style.background : look.getItemColor(this));
+                gc.setForeground(style.borderColor != null ? style.borderColor : look.getItemBorderColor(this));
             }
             gc.setLineWidth(ITEM_BORDER);
             gc.fillRectangle(bound.x, bound.y, bound.width, bound.height);
             gc.drawRectangle(bound.x, bound.y, bound.width, bound.height);
             gc.setLineWidth(gcLineWidth);
 
+            // Don't layout the text if not a single line is visible.
+            if (bound.height < itemTextHeight + SPACING) continue;
+            if (text == null) text = item.getRenderText(small);
+
             /*
              * Draw hours (e.g.: 11am - 2pm)
              */
             if (selected) {
                 gc.setForeground(look.getSelectedItemForeground(this));
             } else {
-                gc.setForeground(item.foreground != null ? item.foreground : look.getItemForeground(this));
+                gc.setForeground(style.foreground != null ? style.foreground : look.getItemForeground(this));
             }
             int x = bound.x + ITEM_BORDER + SPACING;
             int y = bound.y + SPACING;
-            gc.setClipping(x, y, bound.width - SPACING - 1, bound.height - SPACING);
+            gc.setClipping(new Rectangle(x, y, bound.width - SPACING - 1, bound.height - SPACING).intersection(gcClipping));
             // gc.drawText(hours, x, y, SWT.DRAW_TRANSPARENT);
 
             /*
@@ -599,17 +1035,15 @@ public class Planner extends Canvas {
                 y = bound.y + SPACING + SPACING;
                 int width = bound.width - ITEM_BORDER * 2 - SPACING * 2;
                 if ((item.getStyle() & SWT.WRAP) != 0) {
-                    textLayout.setWidth(width);
-                    textLayout.setText(hours + "\r\n" + item.getText());
-                    textLayout.draw(gc, x, y);
+                    item.getTextLayout(width).draw(gc, x, y);
                 } else {
-                    gc.drawText(hours + "\r\n" + item.getText(), x, y, SWT.DRAW_TRANSPARENT | SWT.DRAW_DELIMITER);
+                    gc.drawText(text, x, y, SWT.DRAW_TRANSPARENT | SWT.DRAW_DELIMITER);
                 }
             } else {
                 // In small mode, draw the text aside the hours
                 x = bound.x + ITEM_BORDER + SPACING;
                 y = bound.y + SPACING;
-                gc.drawText(hours + " " + item.getText().replaceAll("\r\n|\r|\n", " "), x, y, SWT.DRAW_TRANSPARENT);
+                gc.drawText(text, x, y, SWT.DRAW_TRANSPARENT);
             }
             gc.setClipping(gcClipping);
         }
@@ -620,8 +1054,39 @@ public class Planner extends Canvas {
         gc.setLineWidth(gcLineWidth);
         gc.setFont(gcFont);
         gc.setClipping(gcClipping);
+    }
 
-        textLayout.dispose();
+    /**
+     * Draw the items over the background image. The short events are visible
+     * in the grid area and the long events in the top area.
+     * 
+     * @param gc
+     */
+    private void drawItems(GC gc) {
+        Rectangle gcClipping = gc.getClipping();
+        for (int area = 0; area < 2; area++) {
+            boolean longEventCells = area == 1;
+            Rectangle clipping = (longEventCells ? topArea : gridArea).intersection(gcClipping);
+            if (clipping.isEmpty()) continue;
+            gc.setClipping(clipping);
+            painting = true;
+            try {
+                for (int i = 0; i < visibleItems.size(); i++) {
+                    PlannerItem item = visibleItems.get(i);
+                    int index = visibleIndices[i];
+                    if (isVisible(i)
+                            && item.boundsCount > 0
+                            && item.inLongEventCells == longEventCells
+                            && itemBounds.intersects(item.boundsOffset, item.boundsCount, clipping, ITEM_BORDER)
+                            && checkData(item, index)) {
+                        drawItem(gc, item, longEventCells, index == selectedIndex);
+                    }
+                }
+            } finally {
+                painting = false;
+            }
+        }
+        gc.setClipping(gcClipping);
     }
 
     /**
@@ -642,14 +1107,15 @@ public class Planner extends Canvas {
         gc.setForeground(getForeground());
         this.calendar.setTime(timeRangeStart);
         int hour = calendar.get(Calendar.HOUR_OF_DAY);
-        for (int row = 0; row < CELL_ROW_COUNT; row += 2) {
+        int rowsPerHour = getRowsPerHour();
+        for (int row = 0; row < layoutEngine.getRowCount(); row += rowsPerHour) {
             this.calendar.set(Calendar.HOUR_OF_DAY, hour);
             String text = look.formatHour(this, calendar.getTime());
 
             // Align the text on the right edge
             Point size = gc.textExtent(text);
             gc.drawText(text, leftArea.x + leftArea.width - size.x - SPACING, leftScrollRect.y + cellHeight * row);
-            hour++;
+            hour += Math.max(1, getRowDuration() / 60);
         }
 
         // Restore old values
@@ -709,13 +1175,6 @@ public class Planner extends Canvas {
         gc.setBackground(gcBackground);
         gc.setForeground(gcForeground);
 
-        // Draw long events
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).bounds != null && items.get(i).bounds.length > 0 && items.get(i).inLongEventCells) {
-                drawItem(gc, items.get(i), true, i == selectedIndex);
-            }
-        }
-
         // Fill the corner
         gc.fillRectangle(cornerArea);
 
@@ -726,6 +1185,95 @@ public class Planner extends Canvas {
 
     }
 
+    /**
+     * Ends a batch update started with {@link #beginUpdate()}. When the
+     * outermost update ends, the items are layout and the area of the items
+     * changed during the update is redrawn.
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #beginUpdate()
+     */
+    public void endUpdate() {
+        checkWidget();
+        if (updateCount == 0) return;
+        updateCount--;
+        if (updateCount > 0) return;
+        if (layoutDirty) {
+            layoutDirty = false;
+            updateItems();
+        }
+        if (redrawDirty) {
+            redrawDirty = false;
+            redraw();
+        } else {
+            for (PlannerItem item : damagedItems) {
+                if (!item.isDisposed()) redrawBounds(getItemBounds(item));
+            }
+        }
+        damagedItems.clear();
+    }
+
+    /**
+     * Return the image of the static part of the planner : the background, the
+     * grid, the hours and the headers. The image is only drawn again when the
+     * size, the look or the displayed week changed. When the planner is
+     * scrolled, the pixels of the image are moved and only the exposed strips
+     * are drawn.
+     * 
+     * @return the image or null if the planner has no size
+     */
+    private Image getBackgroundImage() {
+        Rectangle clientArea = getClientArea();
+        int width = clientArea.x + clientArea.width;
+        int height = clientArea.y + clientArea.height;
+        if (width <= 0 || height <= 0) return null;
+
+        // The areas define the size and the number of long event rows. The
+        // scroll offsets are left out of the key.
+        List<Object> key = Arrays.asList(new Object[] {
+                new Point(width, height),
+                new Point(gridScrollRect.width, gridScrollRect.height),
+                new Rectangle(leftArea.x, leftArea.y, leftArea.width, leftArea.height),
+                new Rectangle(topArea.x, topArea.y, topArea.width, topArea.height),
+                new Rectangle(0, longEventScrollRect.y, longEventScrollRect.width, longEventScrollRect.height),
+                Integer.valueOf(longEventCellWidth),
+                Long.valueOf(layoutEngine.getRowDuration()),
+                Long.valueOf(timeRangeStart.getTime()),
+                Long.valueOf(timeRangeEnd.getTime()),
+                Long.valueOf(curDateSelection.getTimeInMillis()),
+                look,
+                look.getGridColor(this),
+                look.getItemFont(this),
+                look.getTitleFont(this),
+                getBackground(),
+                getForeground(),
+                getFont() });
+        if (backgroundImage != null && key.equals(backgroundImageKey)) {
+            scrollBackgroundImage();
+            return backgroundImage;
+        }
+
+        if (backgroundImage != null) {
+            backgroundImage.dispose();
+        }
+        backgroundImage = new Image(getDisplay(), width, height);
+        backgroundImageKey = key;
+        backgroundImageOffset = new Point(horizontalScrollOffset, verticalScrollOffset);
+        GC gc = new GC(backgroundImage);
+        try {
+            drawBackground(gc, new Rectangle(0, 0, width, height));
+        } finally {
+            gc.dispose();
+        }
+        return backgroundImage;
+    }
+
     public Date getDateSelection() {
         return curDateSelection.getTime();
     }
@@ -783,7 +1331,9 @@ public class Planner extends Canvas {
     public PlannerItem getItem(int index) {
         // checkWidget();
         if (index < 0 || index >= items.size()) SWT.error(SWT.ERROR_INVALID_RANGE);
-        return items.get(index);
+        PlannerItem item = _getItem(index);
+        checkData(item, index);
+        return item;
     }
 
     /**
@@ -803,17 +1353,34 @@ public class Planner extends Canvas {
      */
     public PlannerItem getItem(Point pt) {
         checkWidget();
-        PlannerItem item = null;
-        for (PlannerItem i : items) {
-            for (Rectangle bound : i.bounds) {
-                if (bound.contains(pt)) {
-                    item = i;
+        if (itemIndex == null) {
+            // Index the bounds computed by the last layout.
+            itemIndex = new GridIndex(cellWidth, cellHeight);
+            for (int i = 0; i < visibleItems.size(); i++) {
+                if (!isVisible(i)) continue;
+                for (Rectangle bound : getItemBounds(visibleItems.get(i))) {
+                    itemIndex.add(visibleIndices[i], bound.x, bound.y, bound.width, bound.height);
                 }
             }
         }
+        int index = itemIndex.find(pt.x, pt.y);
+        if (index == -1) return null;
+        PlannerItem item = items.get(index);
+        checkData(item, index);
         return item;
     }
 
+    /**
+     * Return a copy of the rectangles where the item is drawn.
+     * 
+     * @param item
+     *            the item
+     * @return the rectangles or null if the item was never layout
+     */
+    Rectangle[] getItemBounds(PlannerItem item) {
+        return itemBounds.get(item.boundsOffset, item.boundsCount);
+    }
+
     /**
      * Return the number of tabs in the folder.
      * 
@@ -832,6 +1399,23 @@ public class Planner extends Canvas {
         return items.size();
     }
 
+    /**
+     * Returns the start or end time of the item at the given index.
+     * 
+     * @param index
+     *            the item index
+     * @param end
+     *            True to return the end time
+     * @return the time in milliseconds or UNDEFINED_TIME
+     */
+    private long getItemTime(int index, boolean end) {
+        if (virtual) {
+            return end ? virtualEndTimes[index] : virtualStartTimes[index];
+        }
+        PlannerItem item = items.get(index);
+        return end ? item.endTime : item.startTime;
+    }
+
     /**
      * Return the tab items.
      * 
@@ -848,7 +1432,83 @@ public class Planner extends Canvas {
     public PlannerItem[] getItems() {
         // checkWidget();
         PlannerItem[] tabItems = new PlannerItem[items.size()];
-        return items.toArray(tabItems);
+        for (int i = 0; i < tabItems.length; i++) {
+            tabItems[i] = getItem(i);
+        }
+        return tabItems;
+    }
+
+    /**
+     * Returns the items intersecting the given time range, in the receiver
+     * order. Two time ranges intersect if each one start before the other one
+     * end. The items are found using the time index of the receiver.
+     * 
+     * @param start
+     *            the start of the time range
+     * @param end
+     *            the end of the time range
+     * @return the items
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the start or end time is
+     *                null</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #getOverlapping(PlannerItem)
+     */
+    public PlannerItem[] getItems(Date start, Date end) {
+        checkWidget();
+        if (start == null || end == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        int[] indices = queryTimeIndex(start.getTime(), end.getTime());
+        PlannerItem[] result = new PlannerItem[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = getItem(indices[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the executor used to compute the layout of large weeks.
+     * 
+     * @return the executor or null if the default worker thread is used
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public Executor getLayoutExecutor() {
+        checkWidget();
+        return layoutExecutor;
+    }
+
+    /**
+     * Returns the number of displayed items from which the layout is computed
+     * in a worker thread.
+     * 
+     * @return the threshold
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public int getLayoutThreshold() {
+        checkWidget();
+        return layoutThreshold;
     }
 
     /**
@@ -861,7 +1521,7 @@ public class Planner extends Canvas {
         int max = 0;
         // TODO Extract the method here
         this.calendar.setTime(timeRangeStart);
-        for (int row = 0; row < CELL_ROW_COUNT; row += 2) {
+        for (int hour = 0; hour < 24; hour++) {
             max = Math.max(max, gc.textExtent(look.formatHour(this, this.calendar.getTime())).x);
             this.calendar.add(Calendar.HOUR_OF_DAY, 1);
         }
@@ -878,6 +1538,92 @@ public class Planner extends Canvas {
         return look;
     }
 
+    /**
+     * Returns the items whose time range intersect the time range of the given
+     * item, in the receiver order. The given item is not part of the result.
+     * 
+     * @param item
+     *            the item
+     * @return the overlapping items (empty if the item time range is not
+     *         defined)
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the item is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the item is disposed or
+     *                is not an item of the receiver</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #getItems(Date, Date)
+     */
+    public PlannerItem[] getOverlapping(PlannerItem item) {
+        checkWidget();
+        if (item == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (item.isDisposed() || item.getParent() != this) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        if (item.startTime == UNDEFINED_TIME || item.endTime == UNDEFINED_TIME) return new PlannerItem[0];
+        int[] indices = queryTimeIndex(item.startTime, item.endTime);
+        List<PlannerItem> result = new ArrayList<PlannerItem>(indices.length);
+        for (int index : indices) {
+            PlannerItem other = getItem(index);
+            if (other != item) result.add(other);
+        }
+        return result.toArray(new PlannerItem[result.size()]);
+    }
+
+    /**
+     * Returns true if the layout of the previous and next weeks is computed
+     * when the user interface is idle.
+     * 
+     * @return True if the adjacent weeks are prefetched
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public boolean getPrefetchAdjacentWeeks() {
+        checkWidget();
+        return prefetchAdjacentWeeks;
+    }
+
+    /**
+     * Returns the duration of a row of the grid.
+     * 
+     * @return the duration in minutes
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #setRowDuration(int)
+     */
+    public int getRowDuration() {
+        checkWidget();
+        return (int) (layoutEngine.getRowDuration() / MINUTE);
+    }
+
+    /**
+     * Return the number of rows between two hour lines (one for rows of an
+     * hour or more).
+     * 
+     * @return the number of rows
+     */
+    private int getRowsPerHour() {
+        return (int) Math.max(1, 60 * MINUTE / layoutEngine.getRowDuration());
+    }
+
     /**
      * Return the selected tab item, or an empty array if there is no selection.
      * 
@@ -894,7 +1640,7 @@ public class Planner extends Canvas {
     public PlannerItem getSelection() {
         // checkWidget();
         if (selectedIndex == -1) return null;
-        return items.get(selectedIndex);
+        return getItem(selectedIndex);
     }
 
     /**
@@ -939,6 +1685,51 @@ public class Planner extends Canvas {
         return style;
     }
 
+    /**
+     * Returns the start time of the grid row at a point in the widget. The
+     * time is computed from the geometry of the last layout without looking
+     * at the items, so it may be called on every mouse event (e.g.: to find
+     * the drop location of a drag and drop).
+     * 
+     * @param pt
+     *            the point in coordinates relative to the receiver
+     * @return the time or null if the point is not in the grid area
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the point is null</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public Date getTime(Point pt) {
+        checkWidget();
+        if (pt == null) {
+            SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        }
+        if (!gridArea.contains(pt) || !gridScrollRect.contains(pt) || cellWidth <= 0 || cellHeight <= 0) return null;
+        return new Date(layoutEngine.getTime(pt.x, pt.y));
+    }
+
+    /**
+     * Return the rectangles of the grid covered by a time range, computed as
+     * the bounds of a short event filling the cell width.
+     * 
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @return the rectangles
+     */
+    Rectangle[] getTimeBounds(long start, long end) {
+        return layoutEngine.layoutItem(start, end, false);
+    }
+
     /**
      * Gets the vertical= pixel.
      * 
@@ -964,31 +1755,76 @@ public class Planner extends Canvas {
         scrollHorizontal(scrollPixel, false);
     }
 
-    // private GregorianCalendar getTimeFromPoint(int x, int y) {
-    // FIXME
-    // if (!gridArea.contains(x, y))
-    // return null;
-    //
-    // int index = 0;
-    // while (index < cells.length && !cells[index].contains(x, y))
-    // index++;
-    //
-    // if (index >= cells.length)
-    // return null;
-    //
-    // GregorianCalendar time = new GregorianCalendar();
-    // time.setTime(dates[index].getTime());
-    //
-    // int yRel = (y - centerScrollRect.y);
-    // int box = (yRel / LINE_HEIGHT) * 10;
-    //
-    // time.set(Calendar.HOUR_OF_DAY, box / 20);
-    // time.set(Calendar.MINUTE, (box % 20) == 0 ? 0 : 30);
-    // time.set(Calendar.SECOND, 0);
-    //
-    // return time;
-    // return null;
-    // }
+    /**
+     * Called by the items to notify this class about a change. If an update is
+     * in progress, the planner is only marked as dirty. Otherwise the items are
+     * layout (if required) and the item is redrawn. Only the bounds of the item
+     * are redrawn : when the items are layout, the old and new bounds of the
+     * moved items are redrawn.
+     * 
+     * @param item
+     *            the item that changed or null to redraw all the items (not
+     *            used if the items need to be layout)
+     * @param layout
+     *            True if the items need to be layout (e.g.: the time range
+     *            changed). False if only a redraw is required.
+     */
+    void handleItemChange(PlannerItem item, boolean layout) {
+        if (layout) {
+            // The item index, time range or bounds changed.
+            itemIndex = null;
+            layoutGeneration++;
+            itemsVersion++;
+        }
+        if (updateCount > 0) {
+            if (layout) {
+                layoutDirty = true;
+            } else if (item == null) {
+                redrawDirty = true;
+            } else {
+                damagedItems.add(item);
+            }
+            return;
+        }
+        if (layout) {
+            updateItems();
+        } else if (item == null) {
+            redraw();
+        } else {
+            redrawBounds(getItemBounds(item));
+        }
+    }
+
+    /**
+     * Called by the items when their time range changed. If possible, only the
+     * items sharing a cluster with the old or the new time range are layout.
+     * The item is redrawn since the time range is part of its text.
+     * 
+     * @param item
+     *            the item that moved
+     * @param oldStart
+     *            the previous start time (may be undefined)
+     * @param oldEnd
+     *            the previous end time (may be undefined)
+     */
+    void handleItemMove(PlannerItem item, long oldStart, long oldEnd) {
+        // The item is checked individually until the time index is created
+        // again.
+        int index = indexOf(item);
+        if (index == -1) {
+            timeIndex = null;
+        } else {
+            if (virtual) {
+                virtualStartTimes[index] = item.startTime;
+                virtualEndTimes[index] = item.endTime;
+            }
+            timeIndexChanges.set(index);
+        }
+        if (updateCount > 0 || oldStart == UNDEFINED_TIME || oldEnd == UNDEFINED_TIME || !layoutCluster(item, oldStart, oldEnd)) {
+            handleItemChange(item, true);
+        }
+        handleItemChange(item, false);
+    }
 
     /**
      * Scrolls the widget vertically.
@@ -1128,66 +1964,30 @@ public class Planner extends Canvas {
     }
 
     /**
-     * Check if the two items are compatible to fit on the same line.
-     * <p>
-     * In DAY or WEEK style, two items are compatible if the date-time doesn't
-     * intersect.
-     * <p>
-     * In MONTH style, two items are compatible if they occurred on different
-     * days.
-     * 
-     * @param item
-     *            an item
-     * 
-     * @param item2
-     *            an other item
-     * 
-     * @param longEvent
-     *            True if the item should be consider long event
-     * 
-     * @return True if the items doesn't intersect, False otherwise.
-     */
-    private boolean isCompatible(PlannerItem item, PlannerItem item2, boolean longEvent) {
-        Date start1 = item.startTime;
-        Date end1 = item.endTime;
-        Date start2 = item2.startTime;
-        Date end2 = item2.endTime;
-        return !intersect(start1, end1, start2, end2);
-    }
-
-    /**
-     * Check if the given item is 'compatible' with other items. By compatible,
-     * it's mean there is not intersection.
+     * Check if the given item is a short event. A short event is define by it's
+     * time range being smaller then <code>longEventThreshold</code>.
      * 
      * @param item
      *            the item to check
-     * @param items
-     *            items to compare with
-     * @param longEvents
-     *            True if the item should be consider long event
-     * 
-     * @return True if the items doesn't intersect, False otherwise.
+     * @return True if the item represent a short event
      */
-    private boolean isItemCompatibleWith(PlannerItem item, Collection<PlannerItem> items, boolean longEvents) {
-
-        for (PlannerItem item2 : items) {
-            if (!isCompatible(item, item2, longEvents)) {
-                return false;
-            }
-        }
-        return true;
+    private boolean isShortEvent(PlannerItem item) {
+        return PlannerLayoutEngine.isShortEvent(item.startTime, item.endTime);
     }
 
     /**
-     * Check if the given item is a short event. A short event is define by it's
-     * time range being smaller then <code>longEventThreshold</code>.
+     * Check if the visible item is still at the index computed by the last
+     * layout. It may not be the case if items were added or removed during an
+     * update.
      * 
-     * @param item
-     *            the item to check
-     * @return True if the item represent a short event
+     * @param i
+     *            the position in the visible items
+     * @return True if the item and its index are valid
      */
-    private boolean isShortEvent(PlannerItem item) {
-        return item.endTime.getTime() - item.startTime.getTime() < LONGEVENT_TRESHOLD;
+    private boolean isVisible(int i) {
+        PlannerItem item = visibleItems.get(i);
+        int index = visibleIndices[i];
+        return !item.isDisposed() && index < items.size() && items.get(index) == item;
     }
 
     /**
@@ -1205,7 +2005,7 @@ public class Planner extends Canvas {
 
         // Pre-calculate the top area header height
         GC gc = new GC(this);
-        int itemTextHeight = calculateTextDimension(gc, null, this.look.getItemFont(this).getFontData()).y;
+        itemTextHeight = calculateTextDimension(gc, null, this.look.getItemFont(this).getFontData()).y;
         int titleTextHeight = calculateTextDimension(gc, null, this.look.getTitleFont(this).getFontData()).y;
         gc.dispose();
         gc = null;
@@ -1222,7 +2022,7 @@ public class Planner extends Canvas {
                 + SPACING
                 + Math.max(LONGEVENT_MINIMUM_CELL_HEIGHT, itemTextHeight + SPACING)
                 * longEventWEEK_CELL_ROW_COUNT
-                + LONG_EVENT_CELL_SPACING
+                + PlannerLayoutEngine.LONG_EVENT_CELL_SPACING
                 + SPACING;
 
         // Define the required size of the left area
@@ -1250,7 +2050,7 @@ public class Planner extends Canvas {
         gridScrollRect.x = newGridArea.x - horizontalScrollOffset;
         gridScrollRect.y = newGridArea.y - verticalScrollOffset;
         gridScrollRect.width = Math.max(newGridArea.width, CELL_MINIMUM_WIDTH * CELL_COL_COUNT);
-        gridScrollRect.height = Math.max(newGridArea.height, CELL_MINIMUM_HEIGHT * CELL_ROW_COUNT);
+        gridScrollRect.height = Math.max(newGridArea.height, CELL_MINIMUM_HEIGHT * layoutEngine.getRowCount());
 
         // Using the leftArea, calculate the position of the left pane according
         // to the scroll bars.
@@ -1271,7 +2071,7 @@ public class Planner extends Canvas {
         longEventScrollRect.x = topScrollRect.x;
         longEventScrollRect.y = SPACING + titleTextHeight + SPACING + itemTextHeight + SPACING;
         longEventScrollRect.width = topScrollRect.width;
-        longEventScrollRect.height = Math.max(LONGEVENT_MINIMUM_CELL_HEIGHT, itemTextHeight + SPACING) * longEventWEEK_CELL_ROW_COUNT + LONG_EVENT_CELL_SPACING;
+        longEventScrollRect.height = Math.max(LONGEVENT_MINIMUM_CELL_HEIGHT, itemTextHeight + SPACING) * longEventWEEK_CELL_ROW_COUNT + PlannerLayoutEngine.LONG_EVENT_CELL_SPACING;
 
         // Check if any of the areas has changed
         if (!newTopArea.equals(topArea)) changed = true;
@@ -1286,277 +2086,281 @@ public class Planner extends Canvas {
     }
 
     /**
-     * This function will return an array of rectangle corresponding to the
-     * given time range. To provide this information, this function take in
-     * consideration the planner style.
-     * <p>
-     * This function is mostly a proxy for other layout* functions.
+     * Layout the clusters of short events touched by the move of an item : the
+     * cluster of the item and the clusters intersecting its old time range.
+     * The other items keep their bounds and are not redrawn.
      * 
-     * @param start
-     *            the start time
-     * @param end
-     *            the end time
-     * @param longEvent
-     *            True if the event should be rendered in the top area
-     * @return rectangles associated with the given time range.
-     */
-    private Rectangle[] layoutItem(Date start, Date end, boolean longEvent) {
-        // Check the date rage value
-        if (start.getTime() > end.getTime()) {
-            throw new IllegalArgumentException();
+     * @param item
+     *            the item that moved
+     * @param oldStart
+     *            the previous start time
+     * @param oldEnd
+     *            the previous end time
+     * @return False if the whole week need to be layout (e.g.: the item wasn't
+     *         displayed or isn't a short event anymore)
+     */
+    private boolean layoutCluster(PlannerItem item, long oldStart, long oldEnd) {
+        if (timeRangeStart == null || item.startTime == UNDEFINED_TIME || item.endTime == UNDEFINED_TIME) return false;
+        if (visibleItems.size() >= layoutThreshold || item.inLongEventCells || !isShortEvent(item)) return false;
+        long start = item.startTime;
+        long end = item.endTime;
+        if (start > end || end <= timeRangeStart.getTime() || start >= timeRangeEnd.getTime()) return false;
+        int pos = visibleItems.indexOf(item);
+        if (pos == -1 || !isVisible(pos)) return false;
+
+        // The time range changed, but the displayed items are the same.
+        itemIndex = null;
+        layoutGeneration++;
+        itemsVersion++;
+
+        // Find the clusters of the short events using the new time range.
+        List<PlannerItem> shortEvents = new ArrayList<PlannerItem>();
+        for (PlannerItem e : visibleItems) {
+            if (!e.isDisposed() && !e.inLongEventCells) shortEvents.add(e);
+        }
+        long[] starts = new long[shortEvents.size()];
+        long[] ends = new long[shortEvents.size()];
+        for (int i = 0; i < shortEvents.size(); i++) {
+            starts[i] = shortEvents.get(i).startTime;
+            ends[i] = shortEvents.get(i).endTime;
+        }
+        int[] clusters = ColumnLayout.computeClusters(starts, ends);
+        boolean[] touched = new boolean[shortEvents.size()];
+        for (int i = 0; i < shortEvents.size(); i++) {
+            if (shortEvents.get(i) == item || starts[i] < oldEnd && oldStart < ends[i]) {
+                touched[clusters[i]] = true;
+            }
         }
-        if (longEvent) {
-            return layoutItemLongEvent(start, end);
+
+        // Layout the items of those clusters.
+        List<PlannerItem> events = new ArrayList<PlannerItem>();
+        int count = 0;
+        for (int i = 0; i < shortEvents.size(); i++) {
+            if (touched[clusters[i]]) {
+                events.add(shortEvents.get(i));
+                starts[count] = starts[i];
+                ends[count++] = ends[i];
+            }
         }
-        return layoutItemShortEvent(start, end);
+        ColumnLayout eventsLayout = new ColumnLayout(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+        layoutItems(events, eventsLayout, false);
+        return true;
     }
 
     /**
-     * This function will return an arrays of rectangle corresponding to the
-     * given time range. The rectangle will be located in the longEvent cells.
+     * This function define the location of the areas and the items.
      * 
-     * @param start
-     *            the event's start date
-     * @param end
-     *            the event's end date
-     * @return the rectangles to represent the event
-     */
-    private Rectangle[] layoutItemLongEvent(Date start, Date end) {
-        Rectangle rect;
-
-        // Compute the start of the rectangle
-        calendar.setTime(start);
-        if (calendar.compareTo(createCalendar(timeRangeStart)) < 0) {
-            calendar.setTime(timeRangeStart);
-        }
-        int col = colIdx(calendar.get(Calendar.DAY_OF_WEEK));
-        int x = longEventScrollRect.x + (int) (col * longEventCellWidth);
-        rect = new Rectangle(x, longEventScrollRect.y, 0, longEventCellHeight);
-
-        // Compute the end of the rectangle
-        calendar.setTime(end);
-        int endCol;
-        if (calendar.compareTo(createCalendar(timeRangeEnd)) >= 0) {
-            calendar.setTime(timeRangeEnd);
-            endCol = CELL_COL_COUNT;
-        } else {
-            endCol = colIdx(calendar.get(Calendar.DAY_OF_WEEK));
-        }
-        rect.width = longEventScrollRect.x + (int) (endCol * longEventCellWidth) - rect.x;
-        return new Rectangle[] { rect };
-    }
-
-    /**
-     * This function define the location of the areas and the items.
-     * 
-     * @return
+     * @return True if the area or the bounds of an item changed. Always false
+     *         if the layout is computed by a worker thread.
      */
     private boolean layoutItems() {
-        boolean changed = false;
+        itemIndex = null;
+
+        // Find the items to be displayed within the current time range. In
+        // virtual mode, those items are created. The layout of a recent week
+        // is cached.
+        if (timeIndex == null) {
+            timeIndex = createTimeIndex();
+        }
+        long weekStart = timeRangeStart.getTime();
+        WeekLayout weekLayout = weekLayouts.get(weekStart, itemsVersion);
+        int[] indices = weekLayout != null ? weekLayout.indices : queryTimeIndex(weekStart, timeRangeEnd.getTime());
+        List<PlannerItem> newVisibleItems = new ArrayList<PlannerItem>(indices.length);
 
         // Split items in two list : short and long events. This way, the long
         // events may be layout in the longEvent cells.
         List<PlannerItem> shortEvents = new ArrayList<PlannerItem>();
         List<PlannerItem> longEvents = new ArrayList<PlannerItem>();
-        for (PlannerItem item : items) {
-            // Check if the item need to be displayed within the current time
-            // range
-            if (intersect(item.startTime, item.endTime, this.timeRangeStart, this.timeRangeEnd)) {
-                // Check if the item is short or long
-                if (isShortEvent(item)) {
-                    item.inLongEventCells = false;
-                    shortEvents.add(item);
-                } else {
-                    item.inLongEventCells = true;
-                    longEvents.add(item);
-                }
+        for (int index : indices) {
+            PlannerItem item = _getItem(index);
+            newVisibleItems.add(item);
+            // Check if the item is short or long
+            if (isShortEvent(item)) {
+                item.inLongEventCells = false;
+                shortEvents.add(item);
             } else {
-                // Remove all bounds
-                item.bounds = new Rectangle[0];
+                item.inLongEventCells = true;
+                longEvents.add(item);
             }
         }
 
-        // To layout the items, we create a simple representation of it in two
-        // dimension using a Map. This map will hold reference to the the items
-        // and define in which columns the item should be layout.
-        List<List<PlannerItem>> shortEventsLayout = new ArrayList<List<PlannerItem>>();
-        while (0 < shortEvents.size()) {
-            List<PlannerItem> dayEvents = new ArrayList<PlannerItem>();
-            for (PlannerItem item : shortEvents) {
-                if (isItemCompatibleWith(item, dayEvents, false)) {
-                    dayEvents.add(item);
+        // Remove the bounds of the items not displayed anymore. In virtual
+        // mode, release those items if they were never requested by the
+        // client.
+        Set<PlannerItem> visible = new HashSet<PlannerItem>(newVisibleItems);
+        for (int i = 0; i < visibleItems.size(); i++) {
+            PlannerItem item = visibleItems.get(i);
+            if (item.isDisposed() || visible.contains(item)) continue;
+            redrawBounds(getItemBounds(item));
+            setItemBounds(item, EMPTY_BOUNDS);
+            if (virtual && !item.cached) {
+                int index = isVisible(i) ? visibleIndices[i] : indexOf(item);
+                if (index != -1 && index != selectedIndex) {
+                    items.set(index, null);
                 }
             }
-            shortEvents.removeAll(dayEvents);
-            shortEventsLayout.add(dayEvents);
         }
+        visibleItems = newVisibleItems;
+        visibleIndices = indices;
 
-        // Repeat the same step for long events.
-        List<List<PlannerItem>> longEventsLayout = new ArrayList<List<PlannerItem>>();
-        while (0 < longEvents.size()) {
-            List<PlannerItem> dayEvents = new ArrayList<PlannerItem>();
-            for (PlannerItem item : longEvents) {
-                if (isItemCompatibleWith(item, dayEvents, true)) {
-                    dayEvents.add(item);
+        // To layout the items, assign a column to each of them. Items sharing
+        // a column doesn't intersect. For large weeks, the columns are
+        // computed by a worker thread.
+        int generation = ++layoutGeneration;
+        if (weekLayout == null) {
+            if (indices.length >= layoutThreshold) {
+                createWeekLayoutAsync(weekStart, indices, generation);
+                return false;
+            }
+            weekLayout = PlannerLayoutEngine.createWeekLayout(indices, getTimes(indices, false), getTimes(indices, true));
+            weekLayouts.put(weekStart, itemsVersion, weekLayout);
+        }
+        if (prefetchAdjacentWeeks) prefetchAdjacentWeeks();
+        return layoutItems(shortEvents, weekLayout.shortEventsLayout, longEvents, weekLayout.longEventsLayout);
+    }
+
+    /**
+     * Compute the layout of a week in a worker thread, then add it to the cache
+     * in the user-interface thread. The time ranges are copied before leaving
+     * the user-interface thread.
+     * 
+     * @param weekStart
+     *            the week start time
+     * @param indices
+     *            the index of the items displayed in the week
+     * @param generation
+     *            the layout generation to be applied once the layout is
+     *            computed or -1 to only cache the layout. The layout is not
+     *            applied if the items need to be layout again in the meantime.
+     */
+    private void createWeekLayoutAsync(final long weekStart, final int[] indices, final int generation) {
+        final long version = itemsVersion;
+        final long[] starts = getTimes(indices, false);
+        final long[] ends = getTimes(indices, true);
+        final Display display = getDisplay();
+        Executor executor = layoutExecutor != null ? layoutExecutor : getDefaultLayoutExecutor();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final WeekLayout weekLayout = PlannerLayoutEngine.createWeekLayout(indices, starts, ends);
+                if (display.isDisposed()) return;
+                try {
+                    display.asyncExec(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isDisposed()) return;
+                            weekLayouts.put(weekStart, version, weekLayout);
+                            if (generation != -1 && generation == layoutGeneration) {
+                                // Layout again using the cached layout.
+                                layoutItems();
+                            }
+                        }
+                    });
+                } catch (SWTException e) {
+                    // The display was disposed in the meantime.
                 }
             }
-            longEvents.removeAll(dayEvents);
-            longEventsLayout.add(dayEvents);
-        }
+        });
+    }
+
+    /**
+     * Layout the areas and compute the bounds of the items using the given
+     * column layout.
+     * 
+     * @param shortEvents
+     *            the items to layout in the grid
+     * @param shortEventsLayout
+     *            the column layout of the short events
+     * @param longEvents
+     *            the items to layout in the long event cells
+     * @param longEventsLayout
+     *            the column layout of the long events
+     * @return True if the area or the bounds of an item changed
+     */
+    private boolean layoutItems(List<PlannerItem> shortEvents, ColumnLayout shortEventsLayout, List<PlannerItem> longEvents, ColumnLayout longEventsLayout) {
+        boolean changed = false;
 
         // Sets the number of row required for long event area.
-        this.longEventWEEK_CELL_ROW_COUNT = longEventsLayout.size();
+        this.longEventWEEK_CELL_ROW_COUNT = longEventsLayout.getColumnCount();
 
         // Layout all areas
-        changed |= layoutAreas();
+        if (layoutAreas()) {
+            changed = true;
+            redraw();
+        }
 
         // Calculate the cell width and height
-        cellWidth = gridScrollRect.width / CELL_COL_COUNT;
-        cellHeight = gridScrollRect.height / CELL_ROW_COUNT;
-        longEventCellWidth = cellWidth;
-        if (longEventWEEK_CELL_ROW_COUNT > 0) {
-            longEventCellHeight = (longEventScrollRect.height - LONG_EVENT_CELL_SPACING) / longEventWEEK_CELL_ROW_COUNT;
-        } else {
-            longEventCellHeight = 0;
-        }
+        layoutEngine.setGeometry(gridScrollRect, longEventScrollRect, longEventWEEK_CELL_ROW_COUNT);
+        cellWidth = layoutEngine.getCellWidth();
+        cellHeight = layoutEngine.getCellHeight();
+        longEventCellWidth = layoutEngine.getLongEventCellWidth();
+        longEventCellHeight = layoutEngine.getLongEventCellHeight();
 
         /*
          * Start layout short items in grid.
          */
 
         // Loop on each rows
-        changed |= layoutItems(shortEventsLayout, false);
-        changed |= layoutItems(longEventsLayout, true);
+        changed |= layoutItems(shortEvents, shortEventsLayout, false);
+        changed |= layoutItems(longEvents, longEventsLayout, true);
 
         return changed;
     }
 
     /**
-     * @param changed
-     * @param eventsLayout
-     * @return
+     * Copy the start or end time of the given items from the time index.
+     * 
+     * @param indices
+     *            the items index
+     * @param end
+     *            True to copy the end time
+     * @return the times in milliseconds
      */
-    private boolean layoutItems(List<List<PlannerItem>> eventsLayout, boolean longEventCell) {
-
-        boolean changed = false;
-        int rowIndex = 0;
-
-        // Pre-calculate the available space to share between events
-        int availableSpace = 0;
-        int dayOfMonthHeight = 0;
-        if (!longEventCell) {
-            availableSpace = cellWidth - CELL_SPACING;
-        } else {
-            availableSpace = longEventScrollRect.height - LONG_EVENT_CELL_SPACING;
-        }
-
-        for (List<PlannerItem> row : eventsLayout) {
-
-            // Loop on each item
-            for (PlannerItem item : row) {
-
-                // Get rectangles associated to the item's time range.
-                Rectangle[] newBounds = layoutItem(item.startTime, item.endTime, longEventCell);
-
-                // Check if the bound may be extend to fill other columns
-                int extendTo = rowIndex + 1;
-                boolean isCompatible = true;
-                while (isCompatible && extendTo < eventsLayout.size()) {
-                    int j = 0;
-                    List<PlannerItem> otherItems = eventsLayout.get(extendTo);
-                    while (isCompatible && j < otherItems.size()) {
-                        PlannerItem item2 = otherItems.get(j);
-                        isCompatible &= !intersect(item.startTime, item.endTime, item2.startTime, item2.endTime);
-                        j++;
-                    }
-                    extendTo++;
-                }
-                if (!isCompatible) {
-                    extendTo--;
-                }
-                // Those rectangles need to be adapted according to our layout.
-                for (Rectangle newBound : newBounds) {
-                    if (!longEventCell) {
-                        // adjust the width.
-                        newBound.x = newBound.x + (availableSpace / eventsLayout.size()) * rowIndex;
-                        newBound.width = availableSpace / eventsLayout.size() * (extendTo - rowIndex);
-                        if (rowIndex < eventsLayout.size() && extendTo < eventsLayout.size()) {
-                            newBound.width *= 1.7;
-                        }
-                    } else {
-                        // adjust the height
-                        newBound.y = newBound.y + dayOfMonthHeight + (availableSpace / eventsLayout.size()) * rowIndex;
-                        newBound.height = availableSpace / eventsLayout.size();
-                    }
-                }
-
-                // Assign the new bound to the item.
-                changed |= !Arrays.equals(item.bounds, newBounds);
-                item.bounds = newBounds;
-            }
-            rowIndex++;
+    private long[] getTimes(int[] indices, boolean end) {
+        long[] times = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            times[i] = getItemTime(indices[i], end);
         }
-        return changed;
+        return times;
     }
 
     /**
-     * @param start
-     * @param end
-     * @param rects
-     * @return
+     * Compute the bounds of each items according to the column layout.
+     * 
+     * @param events
+     *            the items to layout
+     * @param eventsLayout
+     *            the column layout of the items
+     * @param longEventCell
+     *            True if the items are layout in the long event cells
+     * @return True if the bounds of an item changed
      */
-    private Rectangle[] layoutItemShortEvent(Date start, Date end) {
+    private boolean layoutItems(List<PlannerItem> events, ColumnLayout eventsLayout, boolean longEventCell) {
 
-        List<Rectangle> rects = new ArrayList<Rectangle>();
-
-        // Compute start column & row
-        calendar.setTime(start);
-        if (calendar.compareTo(createCalendar(timeRangeStart)) < 0) {
-            calendar.setTime(timeRangeStart);
-        }
-        int startCol = colIdx(calendar.get(Calendar.DAY_OF_WEEK));
-        int startRow = 2 * calendar.get(Calendar.HOUR_OF_DAY) + (calendar.get(Calendar.MINUTE) < 30 ? 0 : 1);
-
-        // Compute rectangle area
-        int x = gridScrollRect.x + (int) (startCol * cellWidth);
-        int y = gridScrollRect.y + startRow * cellHeight;
-        Rectangle rect = new Rectangle(x, y, cellWidth, cellHeight);
-
-        // Compute end column & row
-        calendar.setTime(end);
-        int endCol;
-        int endRow;
-        if (calendar.compareTo(createCalendar(timeRangeEnd)) >= 0) {
-            calendar.setTime(timeRangeEnd);
-            endCol = CELL_COL_COUNT - 1;
-            endRow = CELL_ROW_COUNT;
-        } else {
-            endCol = colIdx(calendar.get(Calendar.DAY_OF_WEEK));
-            endRow = 2 * calendar.get(Calendar.HOUR_OF_DAY) + (calendar.get(Calendar.MINUTE) < 30 ? 0 : 1);
-        }
-
-        // Loop over each row
-        for (int colIndex = startCol; colIndex < endCol; colIndex++) {
-            // Set the width to fill the rest of the row.
-            rect.height = gridScrollRect.y + CELL_ROW_COUNT * cellHeight - rect.y;
-            // Add the current rect to the list and create a new rectangle
-            // for next day
-            rects.add(rect);
-            // Create a new rectangle for the row
-            x = gridScrollRect.x + (colIndex + 1) * cellWidth;
-            y = gridScrollRect.y;
-            rect = new Rectangle(x, y, cellWidth, 0);
-        }
-
-        y = gridScrollRect.y + (int) (endRow * cellHeight);
-        rect.height = y - rect.y;
-
-        if (rect != null && rect.height != 0) {
-            rects.add(rect);
+        boolean changed = false;
+        long[] starts = new long[events.size()];
+        long[] ends = new long[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            starts[i] = events.get(i).startTime;
+            ends[i] = events.get(i).endTime;
+        }
+        Rectangle[][] bounds = layoutEngine.layoutEvents(starts, ends, eventsLayout, longEventCell);
+
+        // Loop on each item
+        for (int i = 0; i < events.size(); i++) {
+            PlannerItem item = events.get(i);
+            Rectangle[] newBounds = bounds[i];
+
+            // Assign the new bound to the item. Redraw the old and new bounds
+            // if the item moved.
+            if (!itemBounds.equals(item.boundsOffset, item.boundsCount, newBounds)) {
+                changed = true;
+                redrawBounds(getItemBounds(item));
+                redrawBounds(newBounds);
+                setItemBounds(item, newBounds);
+            }
         }
-
-        Rectangle[] a = new Rectangle[rects.size()];
-        return rects.toArray(a);
+        return changed;
     }
 
     void onDispose(Event event) {
@@ -1577,6 +2381,12 @@ public class Planner extends Canvas {
                 items.get(i).dispose();
             }
         }
+        if (backgroundImage != null) {
+            backgroundImage.dispose();
+            backgroundImage = null;
+            backgroundImageKey = null;
+            backgroundImageOffset = null;
+        }
     }
 
     void onKeyDown(Event event) {
@@ -1617,15 +2427,7 @@ public class Planner extends Canvas {
         case SWT.MouseDown: {
             if (event.button != 1) return;
 
-            PlannerItem item = null;
-            for (PlannerItem i : items) {
-                for (Rectangle bound : i.bounds) {
-                    if (bound.contains(x, y)) {
-                        item = i;
-                    }
-                }
-            }
-
+            PlannerItem item = getItem(new Point(x, y));
             if (item != null) {
                 int index = indexOf(item);
                 int oldSelectedIndex = selectedIndex;
@@ -1712,18 +2514,17 @@ public class Planner extends Canvas {
         Color gcBackground = gc.getBackground();
         Color gcForeground = gc.getForeground();
 
-        // Draw the background
-        gc.setBackground(getBackground());
-        gc.fillRectangle(0, 0, getSize().x, getSize().y);
-
-        // Draw the grid area
-        drawGrid(gc);
-
-        // Draw the left area (if required)
-        drawLeft(gc);
+        // Draw the background, the grid, the hours and the headers
+        Image image = getBackgroundImage();
+        if (image != null) {
+            gc.drawImage(image, 0, 0);
+        } else {
+            gc.setBackground(getBackground());
+            gc.fillRectangle(0, 0, getSize().x, getSize().y);
+        }
 
-        // Draw the top area
-        drawTop(gc);
+        // Draw the items
+        drawItems(gc);
 
         // Restore old gc value
         gc.setFont(gcFont);
@@ -1785,6 +2586,109 @@ public class Planner extends Canvas {
         }
     }
 
+    /**
+     * Redraw the given item bounds including the border.
+     * 
+     * @param bounds
+     *            the bounds or null
+     */
+    private void redrawBounds(Rectangle[] bounds) {
+        if (bounds == null) return;
+        for (Rectangle bound : bounds) {
+            redraw(bound.x, bound.y, bound.width + ITEM_BORDER, bound.height + ITEM_BORDER, false);
+        }
+    }
+
+    /**
+     * Release the rectangles of a disposed item.
+     * 
+     * @param item
+     *            the item
+     */
+    void releaseItemBounds(PlannerItem item) {
+        itemBounds.release(item.boundsOffset, item.boundsCount);
+        item.boundsOffset = ItemBounds.NONE;
+        item.boundsCount = 0;
+    }
+
+    /**
+     * Removes the items from the receiver's list at the given zero-relative
+     * indices. The items are removed in a single pass and the planner is layout
+     * once.
+     * 
+     * @param indices
+     *            the array of indices of the items
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_INVALID_RANGE - if the index is not between 0
+     *                and the number of elements in the list minus 1
+     *                (inclusive)</li>
+     *                <li>ERROR_NULL_ARGUMENT - if the indices array is null</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void remove(int[] indices) {
+        checkWidget();
+        if (indices == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (indices.length == 0) return;
+        int[] sorted = Arrays.copyOf(indices, indices.length);
+        Arrays.sort(sorted);
+        if (sorted[0] < 0 || sorted[sorted.length - 1] >= items.size()) SWT.error(SWT.ERROR_INVALID_RANGE);
+
+        // Keep the other items (and their time range)
+        List<PlannerItem> newItems = new ArrayList<PlannerItem>(items.size());
+        List<PlannerItem> removedItems = new ArrayList<PlannerItem>(sorted.length);
+        int newSelectedIndex = selectedIndex;
+        int next = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (next < sorted.length && sorted[next] == i) {
+                // Skip duplicate indices
+                while (next < sorted.length && sorted[next] == i) {
+                    next++;
+                }
+                if (items.get(i) != null) removedItems.add(items.get(i));
+                if (i <= selectedIndex) newSelectedIndex--;
+            } else {
+                if (virtual) {
+                    virtualStartTimes[newItems.size()] = virtualStartTimes[i];
+                    virtualEndTimes[newItems.size()] = virtualEndTimes[i];
+                }
+                newItems.add(items.get(i));
+            }
+        }
+        items = newItems;
+        selectedIndex = newSelectedIndex;
+        if (virtual) {
+            virtualStartTimes = copyOf(virtualStartTimes, items.size());
+            virtualEndTimes = copyOf(virtualEndTimes, items.size());
+        }
+        if (items.isEmpty()) {
+            setToolTipText(null);
+        }
+
+        // The items are already removed from the list, dispose them without
+        // calling destroyItem().
+        boolean oldInDispose = inDispose;
+        inDispose = true;
+        try {
+            for (PlannerItem item : removedItems) {
+                redrawBounds(getItemBounds(item));
+                item.dispose();
+            }
+        } finally {
+            inDispose = oldInDispose;
+        }
+        timeIndex = null;
+        handleItemChange(null, true);
+    }
+
     /**
      * Removes the listener from the collection of listeners who will be
      * notified when the user changes the receiver's selection.
@@ -1798,6 +2702,80 @@ public class Planner extends Canvas {
         removeListener(SWT.DefaultSelection, listener);
     }
 
+    /**
+     * Layout and redraw the items once the paint ends. Used when a SetData
+     * event sent while painting changes a time range.
+     */
+    private void scheduleLayout() {
+        if (layoutScheduled) return;
+        layoutScheduled = true;
+        getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                layoutScheduled = false;
+                if (isDisposed() || !layoutDirty || updateCount > 0) return;
+                layoutDirty = false;
+                updateItems();
+                redraw();
+            }
+        });
+    }
+
+    /**
+     * Move the pixels of the background image by the scroll offsets changed
+     * since it was drawn, the same way the widget is scrolled, and draw the
+     * exposed strips.
+     */
+    private void scrollBackgroundImage() {
+        int dx = backgroundImageOffset.x - horizontalScrollOffset;
+        int dy = backgroundImageOffset.y - verticalScrollOffset;
+        if (dx == 0 && dy == 0) return;
+        backgroundImageOffset = new Point(horizontalScrollOffset, verticalScrollOffset);
+
+        // The top area and the grid area move horizontally, the left area and
+        // the grid area move vertically. All the pixels are moved before
+        // drawing the strips, otherwise a strip would be moved again.
+        List<Rectangle> exposed = new ArrayList<Rectangle>(2);
+        GC gc = new GC(backgroundImage);
+        try {
+            if (dx != 0) {
+                exposed.add(scrollBackgroundImage(gc, new Rectangle(gridArea.x, topArea.y, gridArea.width, topArea.height + gridArea.height), dx, 0));
+            }
+            if (dy != 0) {
+                exposed.add(scrollBackgroundImage(gc, new Rectangle(leftArea.x, gridArea.y, leftArea.width + gridArea.width, gridArea.height), 0, dy));
+            }
+            for (Rectangle bounds : exposed) {
+                drawBackground(gc, bounds);
+            }
+        } finally {
+            gc.dispose();
+        }
+    }
+
+    /**
+     * Move the pixels of an area of the background image.
+     * 
+     * @param gc
+     *            the image graphic context
+     * @param area
+     *            the area to move
+     * @param dx
+     *            the horizontal distance
+     * @param dy
+     *            the vertical distance
+     * @return the exposed strip to be drawn
+     */
+    private Rectangle scrollBackgroundImage(GC gc, Rectangle area, int dx, int dy) {
+        int width = area.width - Math.abs(dx);
+        int height = area.height - Math.abs(dy);
+        if (width <= 0 || height <= 0) return area;
+        gc.copyArea(area.x + Math.max(-dx, 0), area.y + Math.max(-dy, 0), width, height, area.x + Math.max(dx, 0), area.y + Math.max(dy, 0));
+        if (dx > 0) return new Rectangle(area.x, area.y, dx, area.height);
+        if (dx < 0) return new Rectangle(area.x + width, area.y, -dx, area.height);
+        if (dy > 0) return new Rectangle(area.x, area.y, area.width, dy);
+        return new Rectangle(area.x, area.y + height, area.width, -dy);
+    }
+
     /**
      * Scrolls the widget horizontally.
      * 
@@ -1818,30 +2796,25 @@ public class Planner extends Canvas {
         if (horizontalBar != null && adjustScrollBar) {
             horizontalBar.setSelection(horizontalScrollOffset + pixels);
         }
-        int scrollTop = marginTop;
-        int scrollHeight = gridArea.height + topArea.height - marginBottom - marginTop;
-        if (pixels > 0) {
-            int sourceX = gridArea.x + pixels;
-            int scrollWidth = gridArea.width;
-
-            if (scrollWidth > 0) {
-                scroll(gridArea.x, scrollTop, sourceX, scrollTop, scrollWidth, scrollHeight, false);
-            }
-            if (sourceX > scrollWidth) {
-                super.redraw(gridArea.x, scrollTop, pixels - scrollWidth, scrollHeight, true);
-            }
+        // Move the pixels of the top area and the grid area, the left area
+        // stay in place. Only the exposed strip is repainted.
+        int x = gridArea.x;
+        int y = topArea.y;
+        int width = gridArea.width;
+        int height = topArea.height + gridArea.height;
+        if (Math.abs(pixels) >= width) {
+            super.redraw(x, y, width, height, false);
+        } else if (pixels > 0) {
+            scroll(x, y, x + pixels, y, width - pixels, height, false);
         } else {
-            int destinationX = gridArea.x - pixels;
-            int scrollWidth = gridArea.width;
-            if (scrollWidth > 0) {
-                scroll(destinationX, scrollTop, gridArea.x, scrollTop, scrollWidth, scrollHeight, false);
-            }
-            if (destinationX > scrollWidth) {
-                super.redraw(gridArea.x, scrollTop, -pixels - scrollWidth, scrollHeight, true);
-            }
+            scroll(x - pixels, y, x, y, width + pixels, height, false);
         }
         horizontalScrollOffset += pixels;
-        updateItems();
+        gridScrollRect.x -= pixels;
+        topScrollRect.x -= pixels;
+        longEventScrollRect.x -= pixels;
+        layoutEngine.translate(-pixels, 0);
+        translateItems(-pixels, 0);
         return true;
     }
 
@@ -1864,34 +2837,24 @@ public class Planner extends Canvas {
             if (verticalBar != null && adjustScrollBar) {
                 verticalBar.setSelection(verticalScrollOffset + pixels);
             }
-            int scrollTop = gridArea.y;
-            int scrollWidth = gridArea.width + leftArea.width - marginLeft - marginRight;
-            if (pixels > 0) {
-                int sourceY = scrollTop + pixels;
-                int scrollHeight = gridArea.height;
-                if (scrollHeight > 0) {
-                    scroll(marginLeft, scrollTop, marginLeft, sourceY, scrollWidth, scrollHeight, true);
-                }
-                if (sourceY > scrollHeight) {
-                    int redrawY = Math.max(0, scrollTop + scrollHeight);
-                    int redrawHeight = Math.min(gridArea.height, pixels - scrollHeight);
-                    super.redraw(marginLeft, redrawY, scrollWidth, redrawHeight, true);
-                }
+            // Move the pixels of the left area and the grid area, the top
+            // area stay in place. Only the exposed strip is repainted.
+            int x = leftArea.x;
+            int y = gridArea.y;
+            int width = leftArea.width + gridArea.width;
+            int height = gridArea.height;
+            if (Math.abs(pixels) >= height) {
+                super.redraw(x, y, width, height, false);
+            } else if (pixels > 0) {
+                scroll(x, y, x, y + pixels, width, height - pixels, false);
             } else {
-                int destinationY = scrollTop - pixels;
-                int scrollHeight = gridArea.height;
-                if (scrollHeight > 0) {
-                    scroll(marginLeft, destinationY, marginLeft, scrollTop, scrollWidth, scrollHeight, true);
-                }
-                if (destinationY > scrollHeight) {
-                    int redrawY = Math.max(0, scrollTop + scrollHeight);
-                    int redrawHeight = Math.min(gridArea.height, -pixels - scrollHeight);
-                    redraw();
-                    super.redraw(marginLeft, redrawY, scrollWidth, redrawHeight, true);
-                }
+                scroll(x, y - pixels, x, y, width, height + pixels, false);
             }
             verticalScrollOffset += pixels;
-            updateItems();
+            gridScrollRect.y -= pixels;
+            leftScrollRect.y -= pixels;
+            layoutEngine.translate(0, -pixels);
+            translateItems(0, -pixels);
         } else {
             super.redraw();
         }
@@ -1998,6 +2961,225 @@ public class Planner extends Canvas {
         scrollHorizontal(pixel - horizontalScrollOffset, true);
     }
 
+    /**
+     * Store the rectangles where the item is drawn in the packed bounds.
+     * 
+     * @param item
+     *            the item
+     * @param bounds
+     *            the rectangles
+     */
+    private void setItemBounds(PlannerItem item, Rectangle[] bounds) {
+        item.boundsOffset = itemBounds.set(item.boundsOffset, item.boundsCount, bounds);
+        item.boundsCount = bounds.length;
+        itemBounds.compact(items);
+    }
+
+    /**
+     * Sets the number of items contained in the receiver. With VIRTUAL style,
+     * the new items are not created until they are displayed or requested.
+     * 
+     * @param count
+     *            the number of items
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #setItemTimeRange(int, Date, Date)
+     */
+    public void setItemCount(int count) {
+        checkWidget();
+        count = Math.max(0, count);
+        if (count == items.size()) return;
+        beginUpdate();
+        try {
+            // Dispose the items beyond the new count
+            for (int i = items.size() - 1; i >= count; i--) {
+                PlannerItem item = items.get(i);
+                if (item != null) {
+                    item.dispose();
+                } else {
+                    items.remove(i);
+                    if (i <= selectedIndex) selectedIndex--;
+                }
+            }
+            if (virtual) {
+                virtualStartTimes = copyOf(virtualStartTimes, count);
+                virtualEndTimes = copyOf(virtualEndTimes, count);
+                while (items.size() < count) {
+                    items.add(null);
+                }
+                timeIndex = null;
+                handleItemChange(null, true);
+            } else {
+                while (items.size() < count) {
+                    new PlannerItem(this, SWT.NONE);
+                }
+            }
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Sets the order of the items. The given array must contain every item of
+     * the receiver once. The items keep their attributes, the planner is layout
+     * once.
+     * 
+     * @param order
+     *            the items in their new order
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the array is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if the array doesn't
+     *                contain every item of the receiver once</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setItemOrder(PlannerItem[] order) {
+        checkWidget();
+        if (order == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (order.length != items.size()) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        Map<PlannerItem, Integer> indexes = new IdentityHashMap<PlannerItem, Integer>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            indexes.put(_getItem(i), Integer.valueOf(i));
+        }
+
+        // Compute the new order before changing anything.
+        List<PlannerItem> newItems = new ArrayList<PlannerItem>(order.length);
+        long[] newStartTimes = virtual ? new long[order.length] : null;
+        long[] newEndTimes = virtual ? new long[order.length] : null;
+        int newSelectedIndex = -1;
+        for (int i = 0; i < order.length; i++) {
+            Integer index = order[i] != null ? indexes.remove(order[i]) : null;
+            if (index == null) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+            newItems.add(order[i]);
+            if (virtual) {
+                newStartTimes[i] = virtualStartTimes[index.intValue()];
+                newEndTimes[i] = virtualEndTimes[index.intValue()];
+            }
+            if (index.intValue() == selectedIndex) newSelectedIndex = i;
+        }
+        items = newItems;
+        selectedIndex = newSelectedIndex;
+        if (virtual) {
+            virtualStartTimes = newStartTimes;
+            virtualEndTimes = newEndTimes;
+        }
+
+        // The item order define the layout and the drawing order.
+        timeIndex = null;
+        handleItemChange(null, true);
+        handleItemChange(null, false);
+    }
+
+    /**
+     * Sets the time range of the item at the given index. With VIRTUAL style,
+     * this function should be used to define the time range of the items
+     * without creating them.
+     * 
+     * @param index
+     *            the item index
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the start or end time is
+     *                null</li>
+     *                <li>ERROR_INVALID_RANGE - if the index is out of range</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     * @see #setItemCount(int)
+     */
+    public void setItemTimeRange(int index, Date start, Date end) {
+        checkWidget();
+        if (start == null || end == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        if (index < 0 || index >= items.size()) SWT.error(SWT.ERROR_INVALID_RANGE);
+        PlannerItem item = items.get(index);
+        if (virtual) {
+            virtualStartTimes[index] = start.getTime();
+            virtualEndTimes[index] = end.getTime();
+            if (item != null) {
+                item.startTime = start.getTime();
+                item.endTime = end.getTime();
+                item.clearRenderCache();
+            }
+            timeIndexChanges.set(index);
+            handleItemChange(item, true);
+        } else {
+            beginUpdate();
+            try {
+                item.setStartTime(start);
+                item.setEndTime(end);
+            } finally {
+                endUpdate();
+            }
+        }
+    }
+
+    /**
+     * Sets the executor used to compute the layout of large weeks. The
+     * executor only compute the column of each item, the result is applied in
+     * the user-interface thread.
+     * 
+     * @param executor
+     *            the executor or null to use the default worker thread
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setLayoutExecutor(Executor executor) {
+        checkWidget();
+        this.layoutExecutor = executor;
+    }
+
+    /**
+     * Sets the number of displayed items from which the layout is computed in
+     * a worker thread. Smaller weeks are layout synchronously. While the layout
+     * is computed, the items keep their previous bounds.
+     * 
+     * @param threshold
+     *            the number of items (Integer.MAX_VALUE to always layout
+     *            synchronously)
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setLayoutThreshold(int threshold) {
+        checkWidget();
+        this.layoutThreshold = threshold;
+    }
+
     /**
      * Sets the planner look. Allow user to change the color and font of the
      * planner.
@@ -2006,6 +3188,84 @@ public class Planner extends Canvas {
      */
     public void setLook(PlannerLook look) {
         this.look = look;
+        // The items text is formatted by the look
+        for (PlannerItem item : items) {
+            if (item != null) item.clearRenderCache();
+        }
+        redraw();
+    }
+
+    /**
+     * Sets if the layout of the previous and next weeks should be computed
+     * when the user interface is idle. The layouts of the recent weeks are
+     * cached, so navigating to a prefetched week doesn't compute the layout
+     * again.
+     * 
+     * @param prefetch
+     *            True to prefetch the adjacent weeks
+     * 
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setPrefetchAdjacentWeeks(boolean prefetch) {
+        checkWidget();
+        this.prefetchAdjacentWeeks = prefetch;
+        if (prefetch) prefetchAdjacentWeeks();
+    }
+
+    /**
+     * Sets the duration of a row of the grid (vertical zoom). Each row is at
+     * least 20 pixels high, so shorter rows make the grid higher. The time
+     * displayed at the top of the grid area is kept.
+     * <p>
+     * When the rows are too small to show a line of text, the items are drawn
+     * without text. The smallest items are drawn as plain rectangles.
+     * 
+     * @param minutes
+     *            the duration in minutes : 15, 20, 30, 60 or 120 (default is
+     *            30)
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_INVALID_ARGUMENT - if the duration is not one
+     *                of the supported values</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void setRowDuration(int minutes) {
+        checkWidget();
+        if (minutes < MINIMUM_ROW_DURATION || minutes > MAXIMUM_ROW_DURATION || (60 % minutes != 0 && minutes % 60 != 0)) {
+            SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+        }
+        if (minutes * MINUTE == layoutEngine.getRowDuration()) return;
+
+        // Compute the areas using the new grid height, then scroll to the
+        // same time.
+        int oldHeight = gridScrollRect.height;
+        layoutEngine.setRowDuration(minutes * MINUTE);
+        layoutAreas();
+        if (oldHeight > 0) {
+            int offset = (int) ((long) verticalScrollOffset * gridScrollRect.height / oldHeight);
+            verticalScrollOffset = Math.max(0, Math.min(offset, gridScrollRect.height - gridArea.height));
+            layoutAreas();
+        }
+        onResize();
+        ScrollBar verticalBar = getVerticalBar();
+        if (verticalBar != null) {
+            verticalBar.setSelection(verticalScrollOffset);
+        }
+        redraw();
     }
 
     /**
@@ -2069,7 +3329,7 @@ public class Planner extends Canvas {
         checkWidget();
 
         if (index >= 0 && index < items.size()) {
-            PlannerItem selection = items.get(index);
+            PlannerItem selection = getItem(index);
             if (selectedIndex == index) {
                 showItem(selection);
                 return;
@@ -2196,7 +3456,7 @@ public class Planner extends Canvas {
 
         // TODO Complete this function.
 
-        if (item.bounds != null && item.bounds.length > 0) return;
+        if (item.boundsCount > 0) return;
         updateItems();
         redraw();
     }
@@ -2242,8 +3502,10 @@ public class Planner extends Canvas {
         this.calendar.set(Calendar.DAY_OF_WEEK, this.firstDayOfWeek);
 
         Date start = this.calendar.getTime();
-        this.calendar.add(Calendar.DAY_OF_MONTH, 7);
-        Date end = this.calendar.getTime();
+
+        // Compute the start time of each day.
+        layoutEngine.setWeek(this.calendar);
+        Date end = new Date(layoutEngine.getWeekEnd());
 
         // Check if the time range has changed
         boolean change = this.timeRangeStart == null || !this.timeRangeStart.equals(start) || this.timeRangeEnd == null || !this.timeRangeEnd.equals(end);
@@ -2253,6 +3515,101 @@ public class Planner extends Canvas {
 
     }
 
+    /**
+     * Schedule the layout of the previous and next weeks. The layouts are
+     * computed when the user interface is idle and kept in cache.
+     */
+    private void prefetchAdjacentWeeks() {
+        if (prefetchScheduled) return;
+        prefetchScheduled = true;
+        getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                prefetchScheduled = false;
+                if (isDisposed() || !prefetchAdjacentWeeks || timeIndex == null || timeRangeStart == null || updateCount > 0) return;
+                calendar.setTime(timeRangeStart);
+                calendar.add(Calendar.DAY_OF_MONTH, -7);
+                prefetchWeek(calendar.getTimeInMillis(), timeRangeStart.getTime());
+                calendar.setTime(timeRangeEnd);
+                calendar.add(Calendar.DAY_OF_MONTH, 7);
+                prefetchWeek(timeRangeEnd.getTime(), calendar.getTimeInMillis());
+            }
+        });
+    }
+
+    /**
+     * Compute the layout of a week and keep it in cache. The items are not
+     * created.
+     * 
+     * @param weekStart
+     *            the week start time
+     * @param weekEnd
+     *            the week end time
+     */
+    private void prefetchWeek(long weekStart, long weekEnd) {
+        if (weekLayouts.contains(weekStart, itemsVersion)) return;
+        int[] indices = queryTimeIndex(weekStart, weekEnd);
+        if (indices.length >= layoutThreshold) {
+            createWeekLayoutAsync(weekStart, indices, -1);
+        } else {
+            weekLayouts.put(weekStart, itemsVersion, PlannerLayoutEngine.createWeekLayout(indices, getTimes(indices, false), getTimes(indices, true)));
+        }
+    }
+
+    /**
+     * Returns the index of the items intersecting the given time range. The
+     * time index is created if required. The items created or moved since the
+     * time index was created are checked individually, until there is too many
+     * of them.
+     * 
+     * @param from
+     *            the start time
+     * @param to
+     *            the end time
+     * @return the items index in ascending order
+     */
+    private int[] queryTimeIndex(long from, long to) {
+        if (timeIndex == null || timeIndexChanges.cardinality() > Math.max(TIME_INDEX_THRESHOLD, items.size() / 16)) {
+            timeIndex = createTimeIndex();
+        }
+        int[] indices = timeIndex.query(from, to);
+        if (timeIndexChanges.isEmpty()) return indices;
+        int[] result = new int[indices.length + timeIndexChanges.cardinality()];
+        int count = 0;
+        for (int index : indices) {
+            if (index < items.size() && !timeIndexChanges.get(index)) {
+                result[count++] = index;
+            }
+        }
+        for (int index = timeIndexChanges.nextSetBit(0); index >= 0 && index < items.size(); index = timeIndexChanges.nextSetBit(index + 1)) {
+            long start = getItemTime(index, false);
+            long end = getItemTime(index, true);
+            if (start != UNDEFINED_TIME && end != UNDEFINED_TIME && start <= end && from < end && start < to) {
+                result[count++] = index;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Move the bounds of the displayed items with the scrolled pixels. The
+     * long events only move horizontally.
+     * 
+     * @param dx
+     *            the horizontal distance
+     * @param dy
+     *            the vertical distance
+     */
+    private void translateItems(int dx, int dy) {
+        for (PlannerItem item : visibleItems) {
+            if (item.isDisposed()) continue;
+            itemBounds.translate(item.boundsOffset, item.boundsCount, dx, item.inLongEventCells ? 0 : dy);
+        }
+        itemIndex = null;
+    }
+
     /**
      * Update the location of all items.
      */
@@ -15,17 +15,22 @@
  */
 package com.patrikdufresne.planner;
 
+import java.util.Arrays;
+import java.util.Date;
+
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.dnd.DND;
 import org.eclipse.swt.dnd.DropTargetAdapter;
 import org.eclipse.swt.dnd.DropTargetEffect;
 import org.eclipse.swt.dnd.DropTargetEvent;
+import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.FontMetrics;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Widget;
 
 /**
  * This adapter class provides a default drag under effect (eg. select and
@@ -56,6 +61,12 @@ import org.eclipse.swt.widgets.Listener;
  * <dd>FEEDBACK_SELECT, FEEDBACK_SCROLL</dd>
  * </dl>
  * </p>
+ * <p>
+ * The select feedback highlights the grid row under the cursor. Its time is
+ * returned by {@link Planner#getTime(Point)}. The drag events may be received
+ * hundreds of times per second, so the feedback is updated at most once per
+ * display refresh and only the previous and new rows are redrawn.
+ * </p>
  * 
  * @see DropTargetAdapter
  * @see DropTargetEvent
@@ -66,13 +77,55 @@ import org.eclipse.swt.widgets.Listener;
  */
 public class PlannerDropTargetEffect extends DropTargetEffect {
 
+    /**
+     * Minimum delay between two updates of the select feedback, about the
+     * display refresh rate.
+     */
+    static final int FEEDBACK_DELAY = 16; // milli seconds
     static final int SCROLL_HYSTERESIS = 100; // milli seconds
     static final int SCROLL_TOLERANCE = 20; // pixels
 
-    int currentOffset = -1;
+    /**
+     * Number of milliseconds per minute.
+     */
+    private static final long MINUTE = 60 * 1000;
+
+    /**
+     * Redraw the given rectangles of the planner, including their border.
+     * 
+     * @param planner
+     *            the planner
+     * @param bounds
+     *            the rectangles or null
+     */
+    static void redraw(Planner planner, Rectangle[] bounds) {
+        if (bounds == null) return;
+        for (Rectangle bound : bounds) {
+            planner.redraw(bound.x, bound.y, bound.width + 1, bound.height + 1, false);
+        }
+    }
+
+    /**
+     * The rectangles highlighted by the select feedback or null.
+     */
+    Rectangle[] feedbackBounds;
+
+    /**
+     * Update the select feedback using the pending location.
+     */
+    Runnable feedbackRunnable;
+
+    Listener paintListener;
+
+    /**
+     * The location of the last drag over event not yet used to update the
+     * select feedback, relative to the planner. Null if the feedback is up to
+     * date.
+     */
+    Point pendingLocation;
+
     long scrollBeginTime;
     int scrollX = -1, scrollY = -1;
-    Listener paintListener;
 
     /**
      * Creates a new <code>PlannerDropTargetEffect</code> to handle the drag
@@ -84,88 +137,57 @@ public class PlannerDropTargetEffect extends DropTargetEffect {
      */
     public PlannerDropTargetEffect(Planner planner) {
         super(planner);
-        // Add a paint listener
+        // Draw the select feedback over the items
         paintListener = new Listener() {
             public void handleEvent(Event event) {
-                // if (currentOffset != -1) {
-                Planner text = (Planner) getControl();
-                // Point position = text.getLocationAtOffset(currentOffset);
-                // int height = text.getLineHeight(currentOffset);
-                // event.gc.setBackground(event.display.getSystemColor
-                // (SWT.COLOR_BLACK));
-                // event.gc.fillRectangle(100, 100, 50, 50);
-                // System.out.println("print");
-                // }
+                if (feedbackBounds == null) return;
+                Planner planner = (Planner) getControl();
+                Color gcForeground = event.gc.getForeground();
+                event.gc.setForeground(planner.getLook().getSelectedItemBorderColor(planner));
+                for (Rectangle bound : feedbackBounds) {
+                    event.gc.drawRectangle(bound.x, bound.y, bound.width, bound.height);
+                }
+                event.gc.setForeground(gcForeground);
             }
         };
         getControl().addListener(SWT.Paint, paintListener);
+        feedbackRunnable = new Runnable() {
+            public void run() {
+                if (getControl().isDisposed() || pendingLocation == null) return;
+                Planner planner = (Planner) getControl();
+                Date time = planner.getTime(pendingLocation);
+                pendingLocation = null;
+                setFeedback(time);
+            }
+        };
+    }
+
+    /**
+     * Cancel the pending update and remove the select feedback.
+     */
+    void clearFeedback() {
+        if (pendingLocation != null) {
+            getControl().getDisplay().timerExec(-1, feedbackRunnable);
+            pendingLocation = null;
+        }
+        setFeedback(null);
     }
 
     public void dragEnter(DropTargetEvent event) {
-        // FIXME
-        _debug("PlannerDropTargetEffect.dragEnter", event);
-        currentOffset = -1;
+        clearFeedback();
         scrollBeginTime = 0;
         scrollX = -1;
         scrollY = -1;
-        //		getControl().removeListener(SWT.Paint, paintListener);
-        //		getControl().addListener(SWT.Paint, paintListener);
-    }
-
-    private void _debug(String fctName, DropTargetEvent event) {
-        // e DND#DROP_NONE
-        // * @see DND#DROP_MOVE
-        // * @see DND#DROP_COPY
-        // * @see DND#DROP_LINK
-        // * @see DND#DROP_DEFAULT
-        String detail = (event.detail == DND.DROP_NONE ? "" : (((event.detail & DND.DROP_MOVE) == 0 ? "" : "DROP_MOVE ")
-                + ((event.detail & DND.DROP_COPY) == 0 ? "" : "DROP_COPY ")
-                + ((event.detail & DND.DROP_LINK) == 0 ? "" : "DROP_LINK ") + ((event.detail & DND.DROP_DEFAULT) == 0 ? "" : "DROP_DEFAULT ")));
-        String operations = (event.operations == DND.DROP_NONE ? "" : (((event.operations & DND.DROP_MOVE) == 0 ? "" : "DROP_MOVE ")
-                + ((event.operations & DND.DROP_COPY) == 0 ? "" : "DROP_COPY ")
-                + ((event.operations & DND.DROP_LINK) == 0 ? "" : "DROP_LINK ") + ((event.operations & DND.DROP_DEFAULT) == 0 ? "" : "DROP_DEFAULT ")));
-        // * @see DND#FEEDBACK_SELECT
-        // * @see DND#FEEDBACK_INSERT_BEFORE
-        // * @see DND#FEEDBACK_INSERT_AFTER
-        // * @see DND#FEEDBACK_SCROLL
-        // * @see DND#FEEDBACK_EXPAND
-        String feedback = (event.feedback == DND.FEEDBACK_NONE ? "" : (((event.feedback & DND.FEEDBACK_SELECT) == 0 ? "" : "FEEDBACK_SELECT ")
-                + ((event.feedback & DND.FEEDBACK_INSERT_BEFORE) == 0 ? "" : "FEEDBACK_INSERT_BEFORE ")
-                + ((event.feedback & DND.FEEDBACK_INSERT_AFTER) == 0 ? "" : "FEEDBACK_INSERT_AFTER ") + ((event.feedback & DND.FEEDBACK_SCROLL) == 0
-                ? ""
-                : "FEEDBACK_SCROLL "))
-                + ((event.feedback & DND.FEEDBACK_EXPAND) == 0 ? "" : "FEEDBACK_EXPAND "));
-        String msg = String.format(
-                "%s, x: %d, y:%d, detail:%s, operations:%s, feedback: %s, item:%s, currentDataType:%s",
-                fctName,
-                event.x,
-                event.y,
-                detail,
-                operations,
-                feedback,
-                event.item != null ? event.item.toString() : "null",
-                event.currentDataType != null ? event.currentDataType.toString() : "null");
-        System.out.println(msg);
     }
 
     public void dragLeave(DropTargetEvent event) {
-        // FIXME
-        _debug("PlannerDropTargetEffect.dragLeave", event);
-
-        Planner text = (Planner) getControl();
-        if (currentOffset != -1) {
-            // refreshCaret(text, currentOffset, -1);
-        }
-        //		text.removeListener(SWT.Paint, paintListener);
+        clearFeedback();
         scrollBeginTime = 0;
         scrollX = -1;
         scrollY = -1;
     }
 
     public void dragOver(DropTargetEvent event) {
-        // FIXME
-        _debug("PlannerDropTargetEffect.dragOver", event);
-
         int effect = event.feedback;
         Planner text = (Planner) getControl();
 
@@ -180,6 +202,8 @@ public class PlannerDropTargetEffect extends DropTargetEffect {
                     && scrollBeginTime != 0
                     && (pt.x >= scrollX && pt.x <= (scrollX + SCROLL_TOLERANCE) || pt.y >= scrollY && pt.y <= (scrollY + SCROLL_TOLERANCE))) {
                 if (System.currentTimeMillis() >= scrollBeginTime) {
+                    // The feedback is computed again once scrolled.
+                    setFeedback(null);
 
                     Rectangle area = text.getClientArea();
                     GC gc = new GC(text);
@@ -188,12 +212,10 @@ public class PlannerDropTargetEffect extends DropTargetEffect {
                     int charWidth = fm.getAverageCharWidth();
                     int scrollAmount = 10 * charWidth;
                     if (pt.x < area.x + 3 * charWidth) {
-                        System.out.println("coucou1");
                         int leftPixel = text.getHorizontalPixel();
                         text.setHorizontalPixel(leftPixel - scrollAmount);
                     }
                     if (pt.x > area.width - 3 * charWidth) {
-                        System.out.println("coucou2 " + scrollAmount);
                         int leftPixel = text.getHorizontalPixel();
                         text.setHorizontalPixel(leftPixel + scrollAmount);
                     }
@@ -215,46 +237,54 @@ public class PlannerDropTargetEffect extends DropTargetEffect {
                 scrollX = pt.x;
                 scrollY = pt.y;
             }
-            // }
         }
 
         if ((effect & DND.FEEDBACK_SELECT) != 0) {
-            System.out.println("select");
-            // int[] trailing = new int[1];
-            // int newOffset = text.getOffsetAtPoint(pt.x, pt.y, trailing,
-            // false);
-            // newOffset += trailing[0];
-            // if (newOffset != currentOffset) {
-            // refreshCaret(text, currentOffset, newOffset);
-            // currentOffset = newOffset;
-            // }
-        }
-    }
-
-    void refreshCaret(Planner planner, int oldOffset, int newOffset) {
-        if (oldOffset != newOffset) {
-            if (oldOffset != -1) {
-                // Point oldPos = text.getLocationAtOffset(oldOffset);
-                // int oldHeight = text.getLineHeight(oldOffset);
-                // text.redraw (oldPos.x, oldPos.y, CARET_WIDTH, oldHeight,
-                // false);
-            }
-            if (newOffset != -1) {
-                // Point newPos = text.getLocationAtOffset(newOffset);
-                // int newHeight = text.getLineHeight(newOffset);
-                // text.redraw (newPos.x, newPos.y, CARET_WIDTH, newHeight,
-                // false);
+            // Only keep the last location until the next update.
+            if (pendingLocation == null) {
+                text.getDisplay().timerExec(FEEDBACK_DELAY, feedbackRunnable);
             }
+            pendingLocation = pt;
+        } else {
+            clearFeedback();
         }
     }
 
     public void dropAccept(DropTargetEvent event) {
-        // FIXME
-        _debug("PlannerDropTargetEffect.dropAccept", event);
-        if (currentOffset != -1) {
-            Planner text = (Planner) getControl();
-            text.setSelection(currentOffset);
-            currentOffset = -1;
+        clearFeedback();
+    }
+
+    /**
+     * Returns the item at the given location using the bounds of the last
+     * layout.
+     * 
+     * @param x
+     *            the x coordinate used to locate the item
+     * @param y
+     *            the y coordinate used to locate the item
+     * @return the item at the given location or null
+     */
+    public Widget getItem(int x, int y) {
+        Planner planner = (Planner) getControl();
+        return planner.getItem(planner.getDisplay().map(null, planner, x, y));
+    }
+
+    /**
+     * Highlight the grid row starting at the given time. Only the previous and
+     * new rectangles are redrawn.
+     * 
+     * @param time
+     *            the row start time or null to remove the feedback
+     */
+    void setFeedback(Date time) {
+        Planner planner = (Planner) getControl();
+        Rectangle[] bounds = null;
+        if (time != null) {
+            bounds = planner.getTimeBounds(time.getTime(), time.getTime() + planner.getRowDuration() * MINUTE);
         }
+        if (Arrays.equals(bounds, feedbackBounds)) return;
+        redraw(planner, feedbackBounds);
+        redraw(planner, bounds);
+        feedbackBounds = bounds;
     }
 }
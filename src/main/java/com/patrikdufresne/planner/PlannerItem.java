@@ -22,6 +22,7 @@ import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.graphics.TextLayout;
 import org.eclipse.swt.widgets.Item;
 
 /**
@@ -46,31 +47,36 @@ public class PlannerItem extends Item {
     }
 
     /**
-     * The color used to draw the background of this item.
+     * Check if the given resource is disposed.
      */
-    protected Color background;
+    private static void checkResource(Color color) {
+        if (color != null && color.isDisposed()) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+    }
+
     /**
-     * The color used to draw the border of this item.
+     * Compare two attribute values (may be null).
      */
-    protected Color borderColor;
-
     /**
-     * The rectangles where to draw the item in the receiver.
+     * The number of rectangles where to draw the item in the receiver.
      */
-    Rectangle[] bounds;
+    int boundsCount;
 
     /**
-     * The event's end time.
+     * The offset of the item rectangles in the receiver's packed bounds, or
+     * {@link ItemBounds#NONE} if never layout.
      */
-    protected Date endTime;
+    int boundsOffset = ItemBounds.NONE;
+
     /**
-     * Font used to draw the text of this item.
+     * True if the attributes of the item were set by the client (always true
+     * if the planner is not VIRTUAL).
      */
-    protected Font font;
+    boolean cached;
+
     /**
-     * The color used to draw the foreground color of this item.
+     * The event's end time in milliseconds or {@link Planner#UNDEFINED_TIME}.
      */
-    protected Color foreground;
+    long endTime = Planner.UNDEFINED_TIME;
     /**
      * True if the item should be drawn in the long event cell area.
      */
@@ -80,9 +86,28 @@ public class PlannerItem extends Item {
      */
     protected Planner parent;
     /**
-     * The event's start time.
+     * True if the render text was formatted for the long event cells.
+     */
+    boolean renderSmall;
+    /**
+     * The text drawn by the planner (time range and text). Null if it need to
+     * be formatted again.
+     */
+    String renderText;
+    /**
+     * The event's start time in milliseconds or
+     * {@link Planner#UNDEFINED_TIME}.
      */
-    protected Date startTime;
+    long startTime = Planner.UNDEFINED_TIME;
+    /**
+     * The colors and font used to draw this item (shared with other items).
+     */
+    ItemStyle style = ItemStyle.DEFAULT;
+    /**
+     * Text layout used to draw the text when wrapping is enabled. Reused
+     * between paints.
+     */
+    private TextLayout textLayout;
 
     /**
      * Item's tool tip
@@ -120,9 +145,39 @@ public class PlannerItem extends Item {
      *            the zero-relative index to store the receiver in its parent
      */
     public PlannerItem(Planner parent, int style, int index) {
+        this(parent, style, index, true);
+    }
+
+    /**
+     * Create a new Planner item. Used by a virtual planner to create an item
+     * without adding it.
+     * 
+     * @param parent
+     *            a Planner which will be the parent of the new instance (cannot
+     *            be null)
+     * @param style
+     *            the style of control to construct
+     * @param index
+     *            the zero-relative index to store the receiver in its parent
+     * @param create
+     *            True to add the item to the planner
+     */
+    PlannerItem(Planner parent, int style, int index, boolean create) {
         super(parent, checkStyle(style), index);
-        // Create the item
-        parent.createItem(this, index);
+        if (create) {
+            // Create the item
+            parent.createItem(this, index);
+        } else {
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Clear the text formatted for the planner. Called when an attribute used
+     * to draw the text changed.
+     */
+    void clearRenderCache() {
+        renderText = null;
     }
 
     /**
@@ -131,12 +186,15 @@ public class PlannerItem extends Item {
     public void dispose() {
         if (isDisposed()) return;
         parent.destroyItem(this);
+        parent.releaseItemBounds(this);
+        if (textLayout != null) {
+            textLayout.dispose();
+            textLayout = null;
+        }
+        renderText = null;
         super.dispose();
         parent = null;
-        background = null;
-        borderColor = null;
-        foreground = null;
-        bounds = null;
+        style = ItemStyle.DEFAULT;
     }
 
     /**
@@ -154,7 +212,7 @@ public class PlannerItem extends Item {
      */
     public Color getBackground() {
         checkWidget();
-        return background;
+        return style.background;
     }
 
     /**
@@ -172,7 +230,7 @@ public class PlannerItem extends Item {
      */
     public Color getBorderColor() {
         checkWidget();
-        return borderColor;
+        return style.borderColor;
     }
 
     /**
@@ -181,11 +239,12 @@ public class PlannerItem extends Item {
      * @return array of rectangle
      */
     public Rectangle[] getBounds() {
-        return bounds;
+        if (parent == null) return null;
+        return parent.getItemBounds(this);
     }
 
     public Date getEndTime() {
-        return endTime;
+        return endTime == Planner.UNDEFINED_TIME ? null : new Date(endTime);
     }
 
     /**
@@ -205,7 +264,7 @@ public class PlannerItem extends Item {
      */
     public Font getFont() {
         checkWidget();
-        if (font != null) return font;
+        if (style.font != null) return style.font;
         return parent.getFont();
     }
 
@@ -224,7 +283,31 @@ public class PlannerItem extends Item {
      */
     public Color getForeground() {
         checkWidget();
-        return foreground;
+        return style.foreground;
+    }
+
+    /**
+     * Return the text drawn by the planner : the time range formatted by the
+     * planner look followed by the item text. The value is cached until the
+     * text, the time range, the font or the look change.
+     * 
+     * @param small
+     *            True to format the text for the long event cells (on a single
+     *            line)
+     * @return the text to draw
+     */
+    String getRenderText(boolean small) {
+        if (renderText == null || renderSmall != small) {
+            String hours = parent.getLook().formatItemTimeRange(parent, getStartTime(), getEndTime(), small);
+            if (small) {
+                // In small mode, the text is drawn aside the hours
+                renderText = hours + " " + getText().replaceAll("\r\n|\r|\n", " ");
+            } else {
+                renderText = hours + "\r\n" + getText();
+            }
+            renderSmall = small;
+        }
+        return renderText;
     }
 
     /**
@@ -246,7 +329,7 @@ public class PlannerItem extends Item {
     }
 
     public Date getStartTime() {
-        return startTime;
+        return startTime == Planner.UNDEFINED_TIME ? null : new Date(startTime);
     }
 
     /**
@@ -256,6 +339,27 @@ public class PlannerItem extends Item {
         return super.getStyle() | (this.wrap ? SWT.WRAP : SWT.NONE);
     }
 
+    /**
+     * Return the text layout used to draw the wrapped text.
+     * 
+     * @param width
+     *            the wrap width
+     * @return the text layout
+     */
+    TextLayout getTextLayout(int width) {
+        if (textLayout == null) {
+            textLayout = new TextLayout(getDisplay());
+        }
+        String text = getRenderText(false);
+        if (!text.equals(textLayout.getText())) {
+            textLayout.setText(text);
+        }
+        if (textLayout.getWidth() != width) {
+            textLayout.setWidth(width);
+        }
+        return textLayout;
+    }
+
     /**
      * Return the text wrapping mode.
      * 
@@ -313,9 +417,9 @@ public class PlannerItem extends Item {
             SWT.error(SWT.ERROR_INVALID_ARGUMENT);
         }
         // Check if the background value changed
-        if (background == null && color == null || background != null && background.equals(color)) return;
-        background = color;
-        parent.redraw();
+        if (style.background == color) return;
+        style = ItemStyle.valueOf(color, style.borderColor, style.foreground, style.font);
+        parent.handleItemChange(this, false);
     }
 
     /**
@@ -344,18 +448,19 @@ public class PlannerItem extends Item {
             SWT.error(SWT.ERROR_INVALID_ARGUMENT);
         }
         // Check if the background value changed
-        if (borderColor == null && color == null || borderColor != null && borderColor.equals(color)) return;
-        borderColor = color;
-        parent.redraw();
+        if (style.borderColor == color) return;
+        style = ItemStyle.valueOf(style.background, color, style.foreground, style.font);
+        parent.handleItemChange(this, false);
     }
 
     public void setEndTime(Date end) {
         checkWidget();
         if (end == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
-        if (end.equals(getText())) return;
-        endTime = end;
-        parent.updateItems();
-        parent.redraw();
+        if (end.getTime() == endTime) return;
+        long oldEnd = endTime;
+        endTime = end.getTime();
+        renderText = null;
+        parent.handleItemMove(this, startTime, oldEnd);
     }
 
     /**
@@ -386,12 +491,11 @@ public class PlannerItem extends Item {
         if (font != null && font.isDisposed()) {
             SWT.error(SWT.ERROR_INVALID_ARGUMENT);
         }
-        if (font == null && this.font == null) return;
-        if (font != null && font.equals(this.font)) return;
-        this.font = font;
-        if (parent.updateItems()) {
-            parent.redraw();
-        }
+        if (style.font == font) return;
+        style = ItemStyle.valueOf(style.background, style.borderColor, style.foreground, font);
+        renderText = null;
+        // The layout doesn't depend on the item's font.
+        parent.handleItemChange(this, false);
     }
 
     /**
@@ -423,18 +527,19 @@ public class PlannerItem extends Item {
             SWT.error(SWT.ERROR_INVALID_ARGUMENT);
         }
         // Check if the background value changed
-        if (foreground == null && color == null || foreground != null && foreground.equals(color)) return;
-        foreground = color;
-        parent.redraw();
+        if (style.foreground == color) return;
+        style = ItemStyle.valueOf(style.background, style.borderColor, color, style.font);
+        parent.handleItemChange(this, false);
     }
 
     public void setStartTime(Date start) {
         checkWidget();
         if (start == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
-        if (start.equals(getText())) return;
-        startTime = start;
-        parent.updateItems();
-        parent.redraw();
+        if (start.getTime() == startTime) return;
+        long oldStart = startTime;
+        startTime = start.getTime();
+        renderText = null;
+        parent.handleItemMove(this, oldStart, endTime);
     }
 
     /**
@@ -459,7 +564,8 @@ public class PlannerItem extends Item {
         if (string == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
         if (string.equals(getText())) return;
         super.setText(string);
-        parent.redraw();
+        renderText = null;
+        parent.handleItemChange(this, false);
     }
 
     /**
@@ -471,8 +577,74 @@ public class PlannerItem extends Item {
         this.wrap = wrap;
     }
 
+    /**
+     * Sets the text, the time range, the colors and the font of the receiver
+     * at once. The planner is layout once if the time range changed and the
+     * item is redrawn once. Nothing is redrawn if no attribute changed.
+     * 
+     * @param text
+     *            the new text
+     * @param start
+     *            the new start time
+     * @param end
+     *            the new end time
+     * @param background
+     *            the new background color (or null)
+     * @param borderColor
+     *            the new border color (or null)
+     * @param foreground
+     *            the new foreground color (or null)
+     * @param font
+     *            the new font (or null)
+     * 
+     * @exception IllegalArgumentException
+     *                <ul>
+     *                <li>ERROR_NULL_ARGUMENT - if the text, the start time or
+     *                the end time is null</li>
+     *                <li>ERROR_INVALID_ARGUMENT - if a color or the font has
+     *                been disposed</li>
+     *                </ul>
+     * @exception SWTException
+     *                <ul>
+     *                <li>ERROR_WIDGET_DISPOSED - if the receiver has been
+     *                disposed</li>
+     *                <li>ERROR_THREAD_INVALID_ACCESS - if not called from the
+     *                thread that created the receiver</li>
+     *                </ul>
+     */
+    public void update(String text, Date start, Date end, Color background, Color borderColor, Color foreground, Font font) {
+        checkWidget();
+        if (text == null || start == null || end == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+        checkResource(background);
+        checkResource(borderColor);
+        checkResource(foreground);
+        if (font != null && font.isDisposed()) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+        boolean layout = start.getTime() != startTime || end.getTime() != endTime;
+        boolean textChanged = !text.equals(getText()) || font != style.font;
+        if (!layout
+                && !textChanged
+                && background == style.background
+                && borderColor == style.borderColor
+                && foreground == style.foreground) return;
+
+        if (!text.equals(getText())) super.setText(text);
+        long oldStart = this.startTime;
+        long oldEnd = this.endTime;
+        this.startTime = start.getTime();
+        this.endTime = end.getTime();
+        this.style = ItemStyle.valueOf(background, borderColor, foreground, font);
+        if (layout || textChanged) renderText = null;
+
+        if (layout) {
+            parent.handleItemMove(this, oldStart, oldEnd);
+        } else {
+            parent.handleItemChange(this, false);
+        }
+    }
+
     @Override
     public String toString() {
-        return "PlannerItem [text=" + getText() + ", startTime=" + startTime + ", endTime=" + endTime + "]";
+        return "PlannerItem [text=" + getText() + ", startTime=" + getStartTime() + ", endTime=" + getEndTime() + "]";
     }
 }
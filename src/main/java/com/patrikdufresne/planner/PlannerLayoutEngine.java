@@ -0,0 +1,588 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+import com.patrikdufresne.planner.WeekLayoutCache.WeekLayout;
+
+/**
+ * Compute the bounds of the events displayed by the {@link Planner} in a
+ * week. The engine only depends on the time ranges and on the geometry of the
+ * grid and the long event cells, so it may be used without a display (e.g.:
+ * to benchmark the layout).
+ * <p>
+ * The short events are drawn in the grid, one column per day and one row per
+ * row duration (half hour by default). The long events are drawn in the long
+ * event cells, one row per column of their {@link ColumnLayout}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class PlannerLayoutEngine {
+
+    /**
+     * In a situation where the cell are fill completely, we need a little space
+     * to let the user create a new event.
+     */
+    static final int CELL_SPACING = 10;
+
+    /**
+     * Number of columns (days) of the grid.
+     */
+    static final int COLUMN_COUNT = 7;
+
+    /**
+     * Define the cell spacing required for long event.
+     */
+    static final int LONG_EVENT_CELL_SPACING = 10;
+
+    /**
+     * Default duration of a row : half hour (in milliseconds).
+     */
+    static final long DEFAULT_ROW_DURATION = 30 * 60 * 1000;
+
+    /**
+     * Events lasting this time or longer are displayed in the long event
+     * cells.
+     */
+    static final long LONGEVENT_TRESHOLD = 1000 * 60 * 60 * 24;
+
+    /**
+     * Duration of a day without daylight saving time change (in
+     * milliseconds).
+     */
+    private static final long DAY = 1000 * 60 * 60 * 24;
+
+    /**
+     * Compute the column layout of the events displayed in a week. May be
+     * called from any thread.
+     *
+     * @param indices
+     *            the index of the events displayed
+     * @param starts
+     *            the start time of each event displayed
+     * @param ends
+     *            the end time of each event displayed
+     * @return the week layout
+     */
+    static WeekLayout createWeekLayout(int[] indices, long[] starts, long[] ends) {
+        // Split the time ranges as the items : short and long events.
+        int shortCount = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (isShortEvent(starts[i], ends[i])) shortCount++;
+        }
+        long[] shortStarts = new long[shortCount];
+        long[] shortEnds = new long[shortCount];
+        long[] longStarts = new long[indices.length - shortCount];
+        long[] longEnds = new long[indices.length - shortCount];
+        int s = 0, l = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (isShortEvent(starts[i], ends[i])) {
+                shortStarts[s] = starts[i];
+                shortEnds[s++] = ends[i];
+            } else {
+                longStarts[l] = starts[i];
+                longEnds[l++] = ends[i];
+            }
+        }
+        return new WeekLayout(indices, new ColumnLayout(shortStarts, shortEnds), new ColumnLayout(longStarts, longEnds));
+    }
+
+    /**
+     * Check if the time range is displayed in the grid.
+     *
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @return True if the time range is a short event
+     */
+    static boolean isShortEvent(long start, long end) {
+        return end - start < LONGEVENT_TRESHOLD;
+    }
+
+    /**
+     * Define the current cell's height.
+     */
+    private int cellHeight;
+
+    /**
+     * Define the current cell's width.
+     */
+    private int cellWidth;
+
+    /**
+     * The difference of the time zone offset occurring during each day of the
+     * week (daylight saving time change), in milliseconds.
+     */
+    private final long[] dayOffsetChanges = new long[COLUMN_COUNT];
+
+    /**
+     * The start time of each day of the week, followed by the week end time.
+     * A day may not be 24 hours long.
+     */
+    private final long[] dayStarts = new long[COLUMN_COUNT + 1];
+
+    /**
+     * The time when the time zone offset change during each day of the week or
+     * Long.MAX_VALUE.
+     */
+    private final long[] dayTransitions = new long[COLUMN_COUNT];
+
+    /**
+     * Define the scrolled location of the grid.
+     */
+    private Rectangle gridScrollRect = new Rectangle(0, 0, 0, 0);
+
+    /**
+     * Number of events layout since the engine creation.
+     */
+    private int layoutCount;
+
+    /**
+     * Define the height of long event cells.
+     */
+    private int longEventCellHeight;
+
+    /**
+     * Define the with of long event cell. Should be the same as cellWidth.
+     */
+    private int longEventCellWidth;
+
+    /**
+     * Define the scrolled location of the long event.
+     */
+    private Rectangle longEventScrollRect = new Rectangle(0, 0, 0, 0);
+
+    /**
+     * Number of rows of the grid.
+     */
+    private int rowCount = (int) (DAY / DEFAULT_ROW_DURATION);
+
+    /**
+     * Duration of a row (in milliseconds).
+     */
+    private long rowDuration = DEFAULT_ROW_DURATION;
+
+    /**
+     * Return the current cell's height.
+     *
+     * @return the height in pixels
+     */
+    int getCellHeight() {
+        return cellHeight;
+    }
+
+    /**
+     * Return the current cell's width.
+     *
+     * @return the width in pixels
+     */
+    int getCellWidth() {
+        return cellWidth;
+    }
+
+    /**
+     * Return the column of the given time. The time must be within the week.
+     *
+     * @param time
+     *            the time in milliseconds
+     * @return the column index
+     */
+    int getDayIndex(long time) {
+        int col = 0;
+        while (col < COLUMN_COUNT - 1 && time >= dayStarts[col + 1]) {
+            col++;
+        }
+        return col;
+    }
+
+    /**
+     * Return the number of events layout by {@link #layoutEvents} since the
+     * engine creation.
+     *
+     * @return the number of events
+     */
+    int getLayoutCount() {
+        return layoutCount;
+    }
+
+    /**
+     * Return the height of the long event cells.
+     *
+     * @return the height in pixels
+     */
+    int getLongEventCellHeight() {
+        return longEventCellHeight;
+    }
+
+    /**
+     * Return the width of the long event cells.
+     *
+     * @return the width in pixels
+     */
+    int getLongEventCellWidth() {
+        return longEventCellWidth;
+    }
+
+    /**
+     * Return the number of rows of the grid.
+     *
+     * @return the number of rows
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Return the duration of a row.
+     *
+     * @return the duration in milliseconds
+     */
+    long getRowDuration() {
+        return rowDuration;
+    }
+
+    /**
+     * Return the row of the given time within its day. The local
+     * time is computed using the day start and the daylight saving time change
+     * of the day.
+     *
+     * @param time
+     *            the time in milliseconds
+     * @param col
+     *            the column of the time
+     * @return the row index
+     */
+    int getRowIndex(long time, int col) {
+        long timeOfDay = time - dayStarts[col];
+        if (time >= dayTransitions[col]) {
+            timeOfDay += dayOffsetChanges[col];
+        }
+        return (int) Math.min(rowCount - 1, Math.max(0, timeOfDay / rowDuration));
+    }
+
+    /**
+     * Return the start time of the row at the given location of the grid. It's
+     * the inverse of the short event layout : the column and the row are
+     * computed from the cell size, then the daylight saving time change of the
+     * day is applied. A location outside the grid returns the nearest row.
+     *
+     * @param x
+     *            the horizontal location
+     * @param y
+     *            the vertical location
+     * @return the time in milliseconds
+     */
+    long getTime(int x, int y) {
+        int col = cellWidth > 0 ? Math.min(COLUMN_COUNT - 1, Math.max(0, (x - gridScrollRect.x) / cellWidth)) : 0;
+        int row = cellHeight > 0 ? Math.min(rowCount - 1, Math.max(0, (y - gridScrollRect.y) / cellHeight)) : 0;
+        long time = dayStarts[col] + row * rowDuration;
+        if (time - dayOffsetChanges[col] >= dayTransitions[col]) {
+            time -= dayOffsetChanges[col];
+        }
+        return time;
+    }
+
+    /**
+     * Return the end time of the week (start of the next week).
+     *
+     * @return the time in milliseconds
+     */
+    long getWeekEnd() {
+        return dayStarts[COLUMN_COUNT];
+    }
+
+    /**
+     * Return the start time of the week.
+     *
+     * @return the time in milliseconds
+     */
+    long getWeekStart() {
+        return dayStarts[0];
+    }
+
+    /**
+     * Compute the bounds of each event according to the column layout. Events
+     * sharing a column doesn't intersect.
+     *
+     * @param starts
+     *            the start time of each event
+     * @param ends
+     *            the end time of each event
+     * @param eventsLayout
+     *            the column layout of the events
+     * @param longEventCell
+     *            True if the events are layout in the long event cells
+     * @return the rectangles of each event
+     */
+    Rectangle[][] layoutEvents(long[] starts, long[] ends, ColumnLayout eventsLayout, boolean longEventCell) {
+        layoutCount += starts.length;
+        int columnCount = eventsLayout.getColumnCount();
+
+        // Pre-calculate the available space to share between events
+        int availableSpace = 0;
+        if (!longEventCell) {
+            availableSpace = cellWidth - CELL_SPACING;
+        } else {
+            availableSpace = longEventScrollRect.height - LONG_EVENT_CELL_SPACING;
+        }
+
+        Rectangle[][] bounds = new Rectangle[starts.length][];
+        for (int i = 0; i < starts.length; i++) {
+            int rowIndex = eventsLayout.getColumn(i);
+
+            // Get rectangles associated to the event's time range.
+            Rectangle[] newBounds = layoutItem(starts[i], ends[i], longEventCell);
+
+            // The short events share the cell width with the events of their
+            // cluster only. Check if the bound may be extend to fill other
+            // columns.
+            int count = longEventCell ? columnCount : eventsLayout.getClusterColumnCount(i);
+            int extendTo = Math.min(eventsLayout.getExtendTo(i), count);
+
+            // Those rectangles need to be adapted according to our layout.
+            for (Rectangle newBound : newBounds) {
+                if (!longEventCell) {
+                    // adjust the width.
+                    newBound.x = newBound.x + (availableSpace / count) * rowIndex;
+                    newBound.width = availableSpace / count * (extendTo - rowIndex);
+                    if (rowIndex < count && extendTo < count) {
+                        newBound.width *= 1.7;
+                    }
+                } else {
+                    // adjust the height
+                    newBound.y = newBound.y + (availableSpace / columnCount) * rowIndex;
+                    newBound.height = availableSpace / columnCount;
+                }
+            }
+            bounds[i] = newBounds;
+        }
+        return bounds;
+    }
+
+    /**
+     * This function will return an array of rectangle corresponding to the
+     * given time range.
+     *
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @param longEvent
+     *            True if the event should be rendered in the long event cells
+     * @return rectangles associated with the given time range.
+     */
+    Rectangle[] layoutItem(long start, long end, boolean longEvent) {
+        // Check the date rage value
+        if (start > end) {
+            throw new IllegalArgumentException();
+        }
+        if (longEvent) {
+            return layoutItemLongEvent(start, end);
+        }
+        return layoutItemShortEvent(start, end);
+    }
+
+    /**
+     * This function will return an arrays of rectangle corresponding to the
+     * given time range. The rectangle will be located in the longEvent cells.
+     *
+     * @param start
+     *            the event's start time
+     * @param end
+     *            the event's end time
+     * @return the rectangles to represent the event
+     */
+    private Rectangle[] layoutItemLongEvent(long start, long end) {
+        Rectangle rect;
+
+        // Compute the start of the rectangle
+        int col = start < dayStarts[0] ? 0 : getDayIndex(start);
+        int x = longEventScrollRect.x + (int) (col * longEventCellWidth);
+        rect = new Rectangle(x, longEventScrollRect.y, 0, longEventCellHeight);
+
+        // Compute the end of the rectangle
+        int endCol = end >= dayStarts[COLUMN_COUNT] ? COLUMN_COUNT : getDayIndex(end);
+        rect.width = longEventScrollRect.x + (int) (endCol * longEventCellWidth) - rect.x;
+        return new Rectangle[] { rect };
+    }
+
+    /**
+     * This function will return an arrays of rectangle corresponding to the
+     * given time range. The rectangles will be located in the grid, one per
+     * day.
+     *
+     * @param start
+     *            the event's start time
+     * @param end
+     *            the event's end time
+     * @return the rectangles to represent the event
+     */
+    private Rectangle[] layoutItemShortEvent(long start, long end) {
+
+        List<Rectangle> rects = new ArrayList<Rectangle>();
+
+        // Compute start column & row
+        if (start < dayStarts[0]) {
+            start = dayStarts[0];
+        }
+        int startCol = getDayIndex(start);
+        int startRow = getRowIndex(start, startCol);
+
+        // Compute rectangle area
+        int x = gridScrollRect.x + (int) (startCol * cellWidth);
+        int y = gridScrollRect.y + startRow * cellHeight;
+        Rectangle rect = new Rectangle(x, y, cellWidth, cellHeight);
+
+        // Compute end column & row
+        int endCol;
+        int endRow;
+        if (end >= dayStarts[COLUMN_COUNT]) {
+            endCol = COLUMN_COUNT - 1;
+            endRow = rowCount;
+        } else {
+            endCol = getDayIndex(end);
+            endRow = getRowIndex(end, endCol);
+        }
+
+        // Loop over each row
+        for (int colIndex = startCol; colIndex < endCol; colIndex++) {
+            // Set the width to fill the rest of the row.
+            rect.height = gridScrollRect.y + rowCount * cellHeight - rect.y;
+            // Add the current rect to the list and create a new rectangle
+            // for next day
+            rects.add(rect);
+            // Create a new rectangle for the row
+            x = gridScrollRect.x + (colIndex + 1) * cellWidth;
+            y = gridScrollRect.y;
+            rect = new Rectangle(x, y, cellWidth, 0);
+        }
+
+        y = gridScrollRect.y + (int) (endRow * cellHeight);
+        rect.height = y - rect.y;
+
+        if (rect != null && rect.height != 0) {
+            rects.add(rect);
+        }
+
+        Rectangle[] a = new Rectangle[rects.size()];
+        return rects.toArray(a);
+    }
+
+    /**
+     * Sets the location of the grid and the long event cells. The cell sizes
+     * are computed from them.
+     *
+     * @param gridScrollRect
+     *            the scrolled location of the grid
+     * @param longEventScrollRect
+     *            the scrolled location of the long event cells
+     * @param longEventRowCount
+     *            the number of rows of the long event cells
+     */
+    void setGeometry(Rectangle gridScrollRect, Rectangle longEventScrollRect, int longEventRowCount) {
+        this.gridScrollRect = new Rectangle(gridScrollRect.x, gridScrollRect.y, gridScrollRect.width, gridScrollRect.height);
+        this.longEventScrollRect = new Rectangle(longEventScrollRect.x, longEventScrollRect.y, longEventScrollRect.width, longEventScrollRect.height);
+
+        // Calculate the cell width and height
+        cellWidth = gridScrollRect.width / COLUMN_COUNT;
+        cellHeight = gridScrollRect.height / rowCount;
+        longEventCellWidth = cellWidth;
+        if (longEventRowCount > 0) {
+            longEventCellHeight = (longEventScrollRect.height - LONG_EVENT_CELL_SPACING) / longEventRowCount;
+        } else {
+            longEventCellHeight = 0;
+        }
+    }
+
+    /**
+     * Sets the duration of a row. The cell height is computed again from the
+     * grid height.
+     *
+     * @param duration
+     *            the duration in milliseconds, must divide a day
+     */
+    void setRowDuration(long duration) {
+        if (duration <= 0 || DAY % duration != 0) {
+            throw new IllegalArgumentException();
+        }
+        this.rowDuration = duration;
+        this.rowCount = (int) (DAY / duration);
+        this.cellHeight = gridScrollRect.height / rowCount;
+    }
+
+    /**
+     * Move the grid and the long event cells with the scrolled pixels. The
+     * long event cells only move horizontally. The cell sizes don't change.
+     *
+     * @param dx
+     *            the horizontal distance
+     * @param dy
+     *            the vertical distance
+     */
+    void translate(int dx, int dy) {
+        gridScrollRect.x += dx;
+        gridScrollRect.y += dy;
+        longEventScrollRect.x += dx;
+    }
+
+    /**
+     * Sets the week to layout. The start time of each day and the daylight
+     * saving time changes are computed using the calendar time zone.
+     *
+     * @param start
+     *            the calendar set to the start of the week (not modified)
+     */
+    void setWeek(Calendar start) {
+        Calendar calendar = (Calendar) start.clone();
+
+        // Compute the start time of each day. When the daylight saving time
+        // change, find when the time zone offset change within the day.
+        TimeZone zone = calendar.getTimeZone();
+        for (int i = 0; i <= COLUMN_COUNT; i++) {
+            this.dayStarts[i] = calendar.getTimeInMillis();
+            if (i < COLUMN_COUNT) calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            long lo = this.dayStarts[i];
+            long hi = this.dayStarts[i + 1] - 1;
+            int before = zone.getOffset(lo);
+            int after = zone.getOffset(hi);
+            this.dayOffsetChanges[i] = after - before;
+            if (before == after) {
+                this.dayTransitions[i] = Long.MAX_VALUE;
+                continue;
+            }
+            while (hi - lo > 1) {
+                long mid = lo + (hi - lo) / 2;
+                if (zone.getOffset(mid) == before) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            this.dayTransitions[i] = hi;
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the week layouts computed by the
+ * {@link Planner}. Used to display a recent week without computing the column
+ * layout again.
+ * <p>
+ * A week layout only depends on the items (not on the planner size or the
+ * scroll offsets), so the cache is keyed by the week start and cleared when
+ * the items version changes.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class WeekLayoutCache {
+
+    /**
+     * The layout of the items displayed in a week.
+     */
+    static final class WeekLayout {
+
+        /**
+         * The index of the items displayed, in ascending order.
+         */
+        final int[] indices;
+
+        /**
+         * The column layout of the long events (in the order of
+         * <code>indices</code>).
+         */
+        final ColumnLayout longEventsLayout;
+
+        /**
+         * The column layout of the short events (in the order of
+         * <code>indices</code>).
+         */
+        final ColumnLayout shortEventsLayout;
+
+        WeekLayout(int[] indices, ColumnLayout shortEventsLayout, ColumnLayout longEventsLayout) {
+            this.indices = indices;
+            this.shortEventsLayout = shortEventsLayout;
+            this.longEventsLayout = longEventsLayout;
+        }
+
+    }
+
+    /**
+     * The week layouts by week start, in access order.
+     */
+    private final Map<Long, WeekLayout> layouts;
+
+    /**
+     * The items version of the cached layouts.
+     */
+    private long version;
+
+    /**
+     * Create a new cache.
+     *
+     * @param capacity
+     *            the maximum number of weeks
+     */
+    WeekLayoutCache(final int capacity) {
+        this.layouts = new LinkedHashMap<Long, WeekLayout>(capacity * 2, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, WeekLayout> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the layout of a week.
+     *
+     * @param weekStart
+     *            the week start time
+     * @param version
+     *            the current items version
+     * @return the layout or null if not cached
+     */
+    WeekLayout get(long weekStart, long version) {
+        if (this.version != version) {
+            this.layouts.clear();
+            this.version = version;
+            return null;
+        }
+        return this.layouts.get(Long.valueOf(weekStart));
+    }
+
+    /**
+     * Check if the layout of a week is cached without changing the access
+     * order.
+     *
+     * @param weekStart
+     *            the week start time
+     * @param version
+     *            the current items version
+     * @return True if cached
+     */
+    boolean contains(long weekStart, long version) {
+        return this.version == version && this.layouts.containsKey(Long.valueOf(weekStart));
+    }
+
+    /**
+     * Add the layout of a week. Ignored if the items changed since the layout
+     * was computed.
+     *
+     * @param weekStart
+     *            the week start time
+     * @param version
+     *            the items version used to compute the layout
+     * @param layout
+     *            the week layout
+     */
+    void put(long weekStart, long version, WeekLayout layout) {
+        if (version < this.version) return;
+        if (version > this.version) {
+            this.layouts.clear();
+            this.version = version;
+        }
+        this.layouts.put(Long.valueOf(weekStart), layout);
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.databinding;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Accumulate the changed elements and notify them in a single call from the
+ * user-interface thread. Label providers backed by observable maps may use it
+ * to fire one label provider changed event for many map changes.
+ * <p>
+ * At most one runnable is waiting in the display queue at any time. Elements
+ * may be added from any thread.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public abstract class ElementChangeCoalescer {
+
+    private Display display;
+
+    /**
+     * The elements to be notified. Null if disposed.
+     */
+    private Set<Object> pending = new LinkedHashSet<Object>();
+
+    /**
+     * True if a runnable is waiting in the display queue.
+     */
+    private boolean scheduled = false;
+
+    private Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Create a new coalescer.
+     *
+     * @param display
+     *            the display used to notify the changes
+     */
+    public ElementChangeCoalescer(Display display) {
+        if (display == null) throw new IllegalArgumentException();
+        this.display = display;
+    }
+
+    /**
+     * Add changed elements. The elements are notified later from the
+     * user-interface thread.
+     *
+     * @param elements
+     *            the changed elements
+     */
+    public void add(Collection<?> elements) {
+        synchronized (this) {
+            if (this.pending == null || elements.isEmpty()) return;
+            this.pending.addAll(elements);
+            if (this.scheduled) return;
+            this.scheduled = true;
+        }
+        if (!this.display.isDisposed()) {
+            this.display.asyncExec(this.runnable);
+        }
+    }
+
+    /**
+     * Drop the pending elements. Following calls to {@link #add(Collection)}
+     * are ignored.
+     */
+    public void dispose() {
+        synchronized (this) {
+            this.pending = null;
+        }
+    }
+
+    /**
+     * Notify the pending elements.
+     */
+    private void flush() {
+        Object[] elements;
+        synchronized (this) {
+            this.scheduled = false;
+            if (this.pending == null || this.pending.isEmpty()) return;
+            elements = this.pending.toArray();
+            this.pending.clear();
+        }
+        handleElementsChanged(elements);
+    }
+
+    /**
+     * Called from the user-interface thread with the elements changed since
+     * the last call.
+     *
+     * @param elements
+     *            the changed elements (never empty)
+     */
+    protected abstract void handleElementsChanged(Object[] elements);
+
+}
@@ -16,7 +16,6 @@
 package com.patrikdufresne.planner.databinding;
 
 import java.util.Date;
-import java.util.Set;
 
 import org.eclipse.core.databinding.observable.map.IMapChangeListener;
 import org.eclipse.core.databinding.observable.map.IObservableMap;
@@ -45,6 +44,16 @@ public class ObservableMapPlannerLabelProvider extends PlannerLabelProvider {
      */
     protected IObservableMap[] attributeMaps;
 
+    /**
+     * Accumulate the elements changed by the maps to fire a single event.
+     */
+    private ElementChangeCoalescer changes = new ElementChangeCoalescer(Display.getDefault()) {
+        @Override
+        protected void handleElementsChanged(Object[] elements) {
+            fireLabelProviderChanged(new LabelProviderChangedEvent(ObservableMapPlannerLabelProvider.this, elements));
+        }
+    };
+
     private IMapChangeListener mapChangeListener = new IMapChangeListener() {
         @Override
         public void handleMapChange(MapChangeEvent event) {
@@ -53,19 +62,14 @@ public class ObservableMapPlannerLabelProvider extends PlannerLabelProvider {
     };
 
     /**
-     * Notify this class about a map change.
+     * Notify this class about a map change. The changed elements are
+     * accumulated until the user-interface thread is available, then a single
+     * label provider changed event is fired for all of them.
      * 
      * @param event
      */
     protected void handleMapChange(MapChangeEvent event) {
-        Set affectedElements = event.diff.getChangedKeys();
-        final LabelProviderChangedEvent newEvent = new LabelProviderChangedEvent(ObservableMapPlannerLabelProvider.this, affectedElements.toArray());
-        Display.getDefault().asyncExec(new Runnable() {
-            @Override
-            public void run() {
-                fireLabelProviderChanged(newEvent);
-            }
-        });
+        this.changes.add(event.diff.getChangedKeys());
     }
 
     /**
@@ -101,6 +105,7 @@ public class ObservableMapPlannerLabelProvider extends PlannerLabelProvider {
         for (int i = 0; i < this.attributeMaps.length; i++) {
             this.attributeMaps[i].removeMapChangeListener(this.mapChangeListener);
         }
+        this.changes.dispose();
         super.dispose();
         this.attributeMaps = null;
         this.mapChangeListener = null;
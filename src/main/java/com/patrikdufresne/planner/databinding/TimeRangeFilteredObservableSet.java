@@ -0,0 +1,372 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.databinding;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.databinding.observable.ChangeEvent;
+import org.eclipse.core.databinding.observable.IChangeListener;
+import org.eclipse.core.databinding.observable.IStaleListener;
+import org.eclipse.core.databinding.observable.StaleEvent;
+import org.eclipse.core.databinding.observable.set.IObservableSet;
+import org.eclipse.core.databinding.observable.set.ISetChangeListener;
+import org.eclipse.core.databinding.observable.set.SetChangeEvent;
+import org.eclipse.core.databinding.observable.value.IObservableValue;
+import org.eclipse.core.databinding.property.value.IValueProperty;
+
+import com.patrikdufresne.jface.databinding.collections.AbstractFilteredObservableSet;
+import com.patrikdufresne.planner.internal.IntervalIndex;
+
+/**
+ * Filter an observable set to keep the elements intersecting a time range,
+ * typically the time range displayed by a planner:
+ * 
+ * <pre>
+ * new TimeRangeFilteredObservableSet(events, PlannerProperties.startDateValue().observe(planner), PlannerProperties.endDateValue().observe(planner),
+ *         BeanProperties.value(&quot;startDate&quot;), BeanProperties.value(&quot;endDate&quot;));
+ * </pre>
+ * <p>
+ * The elements of the observed set are kept in an {@link IntervalIndex}. When
+ * the time range change, the elements to add are found by querying the index
+ * and only the elements of this set are checked for removal, so a change is
+ * notified with an incremental diff without checking every elements. The
+ * elements added or removed from the observed set since the index was created
+ * are checked individually until the index is created again.
+ * <p>
+ * The start and end time of the elements are read when the elements are added
+ * to the observed set. An element whose time changed must be removed and added
+ * again.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+@SuppressWarnings("rawtypes")
+public class TimeRangeFilteredObservableSet extends AbstractFilteredObservableSet {
+
+    /**
+     * Private listener to avoid exposing interfaces.
+     * 
+     * @author Patrik Dufresne
+     * 
+     */
+    private class PrivateInterface implements IChangeListener, IStaleListener, ISetChangeListener {
+        public PrivateInterface() {
+            // Nothing to do
+        }
+
+        /**
+         * Notify this class about the time range being changed.
+         */
+        @Override
+        public void handleChange(ChangeEvent event) {
+            timeRangeChange();
+        }
+
+        /**
+         * Notify this class about change in the observed set.
+         */
+        @Override
+        public void handleSetChange(SetChangeEvent event) {
+            innerSetChange(event.diff.getAdditions(), event.diff.getRemovals());
+        }
+
+        /**
+         * Compute the set again once the time range is known.
+         */
+        @Override
+        public void handleStale(StaleEvent staleEvent) {
+            makeDirty();
+        }
+    }
+
+    /**
+     * Minimum number of elements added or removed since the index was created
+     * from which the index is created again.
+     */
+    private static final int REINDEX_THRESHOLD = 64;
+
+    /**
+     * Elements added to the observed set since the index was created.
+     */
+    private Set<Object> added = new HashSet<Object>();
+
+    /**
+     * Observable end of the time range.
+     */
+    private IObservableValue end;
+
+    /**
+     * Property providing the end time of an element.
+     */
+    private IValueProperty endProperty;
+
+    /**
+     * The elements indexed.
+     */
+    private Object[] indexed;
+
+    /**
+     * The index of the elements or null if not created.
+     */
+    private IntervalIndex index;
+
+    /**
+     * Private listener
+     */
+    private PrivateInterface privateInterface = new PrivateInterface();
+
+    /**
+     * Elements removed from the observed set since the index was created.
+     */
+    private Set<Object> removed = new HashSet<Object>();
+
+    /**
+     * Observable start of the time range.
+     */
+    private IObservableValue start;
+
+    /**
+     * Property providing the start time of an element.
+     */
+    private IValueProperty startProperty;
+
+    /**
+     * End of the time range of the computed set.
+     */
+    private long to;
+
+    /**
+     * Start of the time range of the computed set.
+     */
+    private long from;
+
+    /**
+     * Create a new time range filter for the set specified.
+     * 
+     * @param set
+     *            the observable set to filter
+     * @param start
+     *            an observable on the start of the time range (a Date,
+     *            inclusive)
+     * @param end
+     *            an observable on the end of the time range (a Date,
+     *            exclusive)
+     * @param startProperty
+     *            the property providing the start time of the elements (a
+     *            Date)
+     * @param endProperty
+     *            the property providing the end time of the elements (a Date)
+     */
+    public TimeRangeFilteredObservableSet(IObservableSet set, IObservableValue start, IObservableValue end, IValueProperty startProperty,
+            IValueProperty endProperty) {
+        super(set);
+        if (start == null || end == null || startProperty == null || endProperty == null) {
+            throw new IllegalArgumentException();
+        }
+        this.start = start;
+        this.end = end;
+        this.startProperty = startProperty;
+        this.endProperty = endProperty;
+    }
+
+    /**
+     * This implementation remove listener.
+     */
+    @Override
+    public synchronized void dispose() {
+        super.dispose();
+        this.start = null;
+        this.end = null;
+        this.index = null;
+        this.indexed = null;
+        this.added = null;
+        this.removed = null;
+    }
+
+    /**
+     * This implementation query the index for the elements of the time range.
+     */
+    @Override
+    protected Iterator doCompute() {
+        this.from = getTime(this.start.getValue(), Long.MAX_VALUE);
+        this.to = getTime(this.end.getValue(), Long.MIN_VALUE);
+        createIndex();
+        return query(this.from, this.to).iterator();
+    }
+
+    /**
+     * Check if the element intersects the time range.
+     * 
+     * @param element
+     *            the element
+     * @return True if the element intersects the time range
+     */
+    @Override
+    protected boolean doSelect(Object element) {
+        return intersects(element, this.from, this.to);
+    }
+
+    /**
+     * Create the index of the elements of the observed set.
+     */
+    private void createIndex() {
+        this.indexed = getInnerSet().toArray();
+        long[] starts = new long[this.indexed.length];
+        long[] ends = new long[this.indexed.length];
+        for (int i = 0; i < this.indexed.length; i++) {
+            starts[i] = getTime(this.startProperty.getValue(this.indexed[i]), Long.MIN_VALUE);
+            ends[i] = getTime(this.endProperty.getValue(this.indexed[i]), Long.MIN_VALUE);
+        }
+        this.index = new IntervalIndex(starts, ends);
+        this.added.clear();
+        this.removed.clear();
+    }
+
+    /**
+     * Returns the time of the given value.
+     * 
+     * @param value
+     *            the date
+     * @param undefined
+     *            the value returned if the value is not a date
+     * @return the time in milliseconds
+     */
+    private static long getTime(Object value, long undefined) {
+        return value instanceof Date ? ((Date) value).getTime() : undefined;
+    }
+
+    /**
+     * Keep track of the elements added and removed from the observed set. An
+     * indexed element removed then added again is kept in both sets, since its
+     * time may have changed.
+     */
+    private void innerSetChange(Set additions, Set removals) {
+        if (this.index == null) return;
+        for (Object element : removals) {
+            if (!this.added.remove(element)) {
+                this.removed.add(element);
+            }
+        }
+        for (Object element : additions) {
+            this.added.add(element);
+        }
+    }
+
+    /**
+     * Check if the element intersects the given time range. Two time ranges
+     * intersect if each one start before the other one end.
+     */
+    private boolean intersects(Object element, long from, long to) {
+        Object start = this.startProperty.getValue(element);
+        Object end = this.endProperty.getValue(element);
+        if (!(start instanceof Date) || !(end instanceof Date)) return false;
+        long startTime = ((Date) start).getTime();
+        long endTime = ((Date) end).getTime();
+        return startTime <= endTime && startTime < to && from < endTime;
+    }
+
+    /**
+     * Returns True if the set need to be computed.
+     */
+    private boolean isDirty() {
+        return this.index == null;
+    }
+
+    /**
+     * Returns the elements intersecting the given time range.
+     */
+    private List<Object> query(long from, long to) {
+        if (this.added.size() + this.removed.size() > Math.max(REINDEX_THRESHOLD, this.indexed.length / 8)) {
+            createIndex();
+        }
+        List<Object> result = new ArrayList<Object>();
+        if (from >= to) return result;
+        for (int i : this.index.query(from, to)) {
+            if (!this.removed.contains(this.indexed[i])) {
+                result.add(this.indexed[i]);
+            }
+        }
+        for (Object element : this.added) {
+            if (intersects(element, from, to)) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add listener to dependencies.
+     */
+    @Override
+    protected void startListening() {
+        super.startListening();
+        if (getInnerSet() != null) {
+            getInnerSet().addSetChangeListener(this.privateInterface);
+        }
+        if (this.start != null) {
+            this.start.addChangeListener(this.privateInterface);
+            this.start.addStaleListener(this.privateInterface);
+            this.end.addChangeListener(this.privateInterface);
+            this.end.addStaleListener(this.privateInterface);
+        }
+    }
+
+    /**
+     * Remove listener from dependencies. The index is discarded since it's not
+     * maintained anymore.
+     */
+    @Override
+    protected void stopListening() {
+        super.stopListening();
+        if (getInnerSet() != null) {
+            getInnerSet().removeSetChangeListener(this.privateInterface);
+        }
+        if (this.start != null) {
+            this.start.removeChangeListener(this.privateInterface);
+            this.start.removeStaleListener(this.privateInterface);
+            this.end.removeChangeListener(this.privateInterface);
+            this.end.removeStaleListener(this.privateInterface);
+        }
+        this.index = null;
+    }
+
+    /**
+     * Compute the elements entering and leaving the time range. The elements
+     * entering the time range are found using the index, only the elements of
+     * this set are checked to find the elements leaving the time range.
+     */
+    protected void timeRangeChange() {
+        if (isDirty()) return;
+        long newFrom = getTime(this.start.getValue(), Long.MAX_VALUE);
+        long newTo = getTime(this.end.getValue(), Long.MIN_VALUE);
+        if (newFrom == this.from && newTo == this.to) return;
+        List<Object> removals = new ArrayList<Object>();
+        for (Object element : getWrappedSet()) {
+            if (!intersects(element, newFrom, newTo)) {
+                removals.add(element);
+            }
+        }
+        this.from = newFrom;
+        this.to = newTo;
+        updateSet(query(newFrom, newTo), removals);
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.internal;
+
+import java.util.Arrays;
+
+/**
+ * Index of time ranges used to find the elements of a time range without
+ * looping on every element. The planner use it to find the displayed items and
+ * the databinding to filter the elements of an observable set.
+ * <p>
+ * The time ranges are sorted by start time. The sorted array is used as an
+ * implicit balanced tree (the middle of each range is the node) where each node
+ * keep the greatest end time of its subtree. A query only visit the subtrees
+ * containing a matching time range : O(log n + k).
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public final class IntervalIndex {
+
+    /**
+     * The end time of each time range, sorted by start time.
+     */
+    private final long[] ends;
+
+    /**
+     * The original index of each time range, sorted by start time.
+     */
+    private final int[] indexes;
+
+    /**
+     * The greatest end time of the subtree of each node.
+     */
+    private final long[] maxEnds;
+
+    /**
+     * The start time of each time range, sorted by start time.
+     */
+    private final long[] starts;
+
+    /**
+     * Create a new index. The time ranges starting at Long.MIN_VALUE
+     * (undefined) or ending before their start are not indexed.
+     *
+     * @param starts
+     *            the start time of each time range (in milliseconds)
+     * @param ends
+     *            the end time of each time range (in milliseconds)
+     */
+    public IntervalIndex(long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException();
+        }
+        // Keep the valid time ranges
+        int count = 0;
+        int[] valid = new int[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] != Long.MIN_VALUE && starts[i] <= ends[i]) {
+                valid[count++] = i;
+            }
+        }
+        this.indexes = Arrays.copyOf(valid, count);
+        sort(this.indexes, valid, starts, 0, count);
+
+        this.starts = new long[count];
+        this.ends = new long[count];
+        for (int i = 0; i < count; i++) {
+            this.starts[i] = starts[this.indexes[i]];
+            this.ends[i] = ends[this.indexes[i]];
+        }
+        this.maxEnds = new long[count];
+        computeMaxEnd(0, count);
+    }
+
+    /**
+     * Sort the indexes by start time (stable merge sort).
+     */
+    private static void sort(int[] a, int[] tmp, long[] starts, int lo, int hi) {
+        if (hi - lo < 2) return;
+        int mid = (lo + hi) >>> 1;
+        sort(a, tmp, starts, lo, mid);
+        sort(a, tmp, starts, mid, hi);
+        if (starts[a[mid - 1]] <= starts[a[mid]]) return;
+        System.arraycopy(a, lo, tmp, lo, hi - lo);
+        int i = lo, j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (j >= hi || i < mid && starts[tmp[i]] <= starts[tmp[j]]) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+    /**
+     * Compute the greatest end time of the subtree [lo, hi).
+     *
+     * @return the greatest end time or Long.MIN_VALUE if empty
+     */
+    private long computeMaxEnd(int lo, int hi) {
+        if (lo >= hi) return Long.MIN_VALUE;
+        int mid = (lo + hi) >>> 1;
+        long max = Math.max(this.ends[mid], Math.max(computeMaxEnd(lo, mid), computeMaxEnd(mid + 1, hi)));
+        this.maxEnds[mid] = max;
+        return max;
+    }
+
+    /**
+     * Return the original index of the time ranges intersecting the given time
+     * range. Two time ranges intersect if each one start before the other one
+     * end.
+     *
+     * @param from
+     *            the start time
+     * @param to
+     *            the end time
+     * @return the indexes in ascending order
+     */
+    public int[] query(long from, long to) {
+        int[] result = new int[16];
+        int count = 0;
+        // Subtrees to visit (lo, hi). The tree depth is at most 32.
+        int[] stack = new int[128];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = this.starts.length;
+        while (top > 0) {
+            int hi = stack[--top];
+            int lo = stack[--top];
+            if (lo >= hi) continue;
+            int mid = (lo + hi) >>> 1;
+            // Check if any time range of the subtree end after the start time.
+            if (this.maxEnds[mid] <= from) continue;
+            stack[top++] = lo;
+            stack[top++] = mid;
+            // The time ranges on the right start after this one.
+            if (this.starts[mid] >= to) continue;
+            if (from < this.ends[mid]) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = this.indexes[mid];
+            }
+            stack[top++] = mid + 1;
+            stack[top++] = hi;
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Return the number of time ranges indexed.
+     *
+     * @return the number of time ranges
+     */
+    public int size() {
+        return this.starts.length;
+    }
+
+}
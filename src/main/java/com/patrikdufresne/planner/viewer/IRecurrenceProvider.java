@@ -0,0 +1,61 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import java.util.Date;
+
+/**
+ * Interface to provide the recurrence of a given element. The start and end
+ * time are the ones of the first occurrence.
+ * <p>
+ * The {@link PlannerViewer} expands the occurrences of the recurring elements
+ * for the displayed weeks only. Each occurrence is displayed as an
+ * {@link Occurrence}.
+ * 
+ * @author Patrik Dufresne
+ * 
+ * @see PlannerViewer#setRecurrenceProvider(IRecurrenceProvider)
+ */
+public interface IRecurrenceProvider extends ITimeRangeProvider {
+
+    /**
+     * Provides the recurrence rule of the given element.
+     * 
+     * @param element
+     *            the element
+     * @return the recurrence rule or null if the element doesn't recur
+     */
+    public RecurrenceRule getRecurrence(Object element);
+
+    /**
+     * Provides the end time of the first occurrence of the given element.
+     * 
+     * @param element
+     *            the element
+     */
+    @Override
+    public Date getEndTime(Object element);
+
+    /**
+     * Provides the start time of the first occurrence of the given element.
+     * 
+     * @param element
+     *            the element
+     */
+    @Override
+    public Date getStartTime(Object element);
+
+}
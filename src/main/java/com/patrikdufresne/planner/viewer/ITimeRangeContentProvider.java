@@ -0,0 +1,51 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import java.util.Date;
+
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+
+/**
+ * Content provider returning only the elements of a time range. When the
+ * content provider of a {@link PlannerViewer} implements this interface, the
+ * viewer query the elements of the displayed week and of the adjacent weeks
+ * instead of every elements of the input. The viewer query the elements again
+ * when the date selection of the planner changed and the items of the elements
+ * outside the time range are disposed.
+ * <p>
+ * {@link #getElements(Object)} is not called by the viewer.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+public interface ITimeRangeContentProvider extends IStructuredContentProvider {
+
+    /**
+     * Returns the elements of the input intersecting the time range [start,
+     * end).
+     * 
+     * @param inputElement
+     *            the input element
+     * @param start
+     *            the start of the time range (inclusive)
+     * @param end
+     *            the end of the time range (exclusive)
+     * @return the array of elements to display in the viewer
+     */
+    public Object[] getElements(Object inputElement, Date start, Date end);
+
+}
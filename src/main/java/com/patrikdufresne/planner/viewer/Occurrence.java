@@ -0,0 +1,99 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import java.util.Date;
+
+/**
+ * An occurrence of a recurring element expanded by the {@link PlannerViewer}.
+ * The occurrences are the elements of the viewer items and of the selection.
+ * Two occurrences are equals if they have the same element and the same time
+ * range.
+ * 
+ * @author Patrik Dufresne
+ * 
+ * @see IRecurrenceProvider
+ */
+public final class Occurrence {
+
+    private final Object element;
+
+    private final long endTime;
+
+    private final long startTime;
+
+    /**
+     * Create a new occurrence.
+     * 
+     * @param element
+     *            the recurring element
+     * @param startTime
+     *            the start of the occurrence
+     * @param endTime
+     *            the end of the occurrence
+     */
+    Occurrence(Object element, long startTime, long endTime) {
+        this.element = element;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Occurrence)) return false;
+        Occurrence other = (Occurrence) obj;
+        return this.startTime == other.startTime && this.endTime == other.endTime && this.element.equals(other.element);
+    }
+
+    /**
+     * Returns the recurring element.
+     * 
+     * @return the element
+     */
+    public Object getElement() {
+        return this.element;
+    }
+
+    /**
+     * Returns the end of this occurrence.
+     * 
+     * @return the end time
+     */
+    public Date getEndTime() {
+        return new Date(this.endTime);
+    }
+
+    /**
+     * Returns the start of this occurrence.
+     * 
+     * @return the start time
+     */
+    public Date getStartTime() {
+        return new Date(this.startTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.element.hashCode() + (int) (this.startTime ^ (this.startTime >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return this.element.toString();
+    }
+
+}
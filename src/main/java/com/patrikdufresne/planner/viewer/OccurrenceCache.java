@@ -0,0 +1,106 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Cache of the occurrences expanded by the {@link PlannerViewer} for a few
+ * weeks. The least recently used week is evicted when the cache is full.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+final class OccurrenceCache {
+
+    private final int capacity;
+
+    /**
+     * The occurrences of each recurring element by week start.
+     */
+    private final LinkedHashMap<Long, Map<Object, Occurrence[]>> weeks;
+
+    /**
+     * Create a new cache.
+     *
+     * @param capacity
+     *            the number of weeks to keep
+     */
+    OccurrenceCache(int capacity) {
+        this.capacity = capacity;
+        this.weeks = new LinkedHashMap<Long, Map<Object, Occurrence[]>>(capacity * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Entry<Long, Map<Object, Occurrence[]>> eldest) {
+                return size() > OccurrenceCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Remove every occurrences.
+     */
+    void clear() {
+        this.weeks.clear();
+    }
+
+    /**
+     * Returns the occurrences of a recurring element within a week.
+     *
+     * @param weekStart
+     *            the start of the week
+     * @param key
+     *            the key of the recurring element
+     * @return the occurrences or null if not cached
+     */
+    Occurrence[] get(long weekStart, Object key) {
+        Map<Object, Occurrence[]> week = this.weeks.get(Long.valueOf(weekStart));
+        return week != null ? week.get(key) : null;
+    }
+
+    /**
+     * Returns the number of weeks cached.
+     *
+     * @return the number of weeks
+     */
+    int getWeekCount() {
+        return this.weeks.size();
+    }
+
+    /**
+     * Cache the occurrences of a recurring element within a week. May evict the
+     * least recently used week.
+     *
+     * @param weekStart
+     *            the start of the week
+     * @param key
+     *            the key of the recurring element
+     * @param occurrences
+     *            the occurrences
+     */
+    void put(long weekStart, Object key, Occurrence[] occurrences) {
+        Map<Object, Occurrence[]> week = this.weeks.get(Long.valueOf(weekStart));
+        if (week == null) {
+            this.weeks.put(Long.valueOf(weekStart), week = new HashMap<Object, Occurrence[]>());
+        }
+        week.put(key, occurrences);
+    }
+
+}
@@ -34,22 +34,29 @@ import org.eclipse.swt.graphics.Image;
 public class PlannerLabelProvider extends BaseLabelProvider implements IFontProvider, IColorProvider, ILabelProvider, ITimeRangeProvider {
 
     /**
-     * Update the label for a cell.
+     * Update the label for a cell. The attributes are applied at once so the
+     * planner is layout and redrawn at most once.
+     * <p>
+     * For an {@link Occurrence}, the labels of the recurring element are used
+     * with the time of the occurrence.
      * 
      * @param item
      *            {@link PlannerViewerItem}
      */
     public void update(PlannerViewerItem item) {
         Object element = item.getElement();
-        item.setText(getText(element));
+        Date start, end;
+        if (element instanceof Occurrence) {
+            start = ((Occurrence) element).getStartTime();
+            end = ((Occurrence) element).getEndTime();
+            element = ((Occurrence) element).getElement();
+        } else {
+            start = getStartTime(element);
+            end = getEndTime(element);
+        }
         Image image = getImage(element);
         item.setImage(image);
-        item.setBackground(getBackground(element));
-        item.setBorderColor(getBorderColor(element));
-        item.setForeground(getForeground(element));
-        item.setFont(getFont(element));
-        item.setStartTime(getStartTime(element));
-        item.setEndTime(getEndTime(element));
+        item.update(getText(element), start, end, getBackground(element), getBorderColor(element), getForeground(element), getFont(element));
     }
 
     /*
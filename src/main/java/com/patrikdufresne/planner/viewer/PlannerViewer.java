@@ -16,14 +16,26 @@
 package com.patrikdufresne.planner.viewer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.jface.viewers.IElementComparer;
 import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Widget;
 
 import com.patrikdufresne.planner.Planner;
@@ -37,8 +49,101 @@ import com.patrikdufresne.planner.PlannerItem;
  */
 public class PlannerViewer extends StructuredViewer {
 
+    /**
+     * Key used to match the elements with the items using the element
+     * comparer.
+     */
+    private class ElementKey {
+
+        private Object element;
+
+        ElementKey(Object element) {
+            this.element = element;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ElementKey && PlannerViewer.this.equals(this.element, ((ElementKey) obj).element);
+        }
+
+        @Override
+        public int hashCode() {
+            IElementComparer comparer = getComparer();
+            return comparer != null ? comparer.hashCode(this.element) : this.element.hashCode();
+        }
+
+    }
+
+    /**
+     * Key of the occurrences of a recurring element in the cache. Include the
+     * rule and the first occurrence, so the occurrences are expanded again
+     * when they change.
+     */
+    private class SeriesKey {
+
+        private ElementKey element;
+
+        private long end;
+
+        private RecurrenceRule rule;
+
+        private long start;
+
+        SeriesKey(Object element, RecurrenceRule rule, long start, long end) {
+            this.element = new ElementKey(element);
+            this.rule = rule;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SeriesKey)) return false;
+            SeriesKey other = (SeriesKey) obj;
+            return this.start == other.start && this.end == other.end && this.rule.equals(other.rule) && this.element.equals(other.element);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.element.hashCode() + this.rule.hashCode();
+        }
+
+    }
+
+    /**
+     * Number of weeks of occurrences kept in cache.
+     */
+    private static final int OCCURRENCE_CACHE_SIZE = 12;
+
+    /**
+     * The occurrences of the recurring elements by week.
+     */
+    private OccurrenceCache occurrences = new OccurrenceCache(OCCURRENCE_CACHE_SIZE);
+
     private Planner planner;
 
+    /**
+     * True if the adjacent weeks are about to be loaded.
+     */
+    private boolean prefetchScheduled;
+
+    /**
+     * End of the time range loaded from the {@link ITimeRangeContentProvider}
+     * (exclusive).
+     */
+    private Date rangeEnd;
+
+    /**
+     * Start of the time range loaded from the
+     * {@link ITimeRangeContentProvider} or null if nothing is loaded.
+     */
+    private Date rangeStart;
+
+    /**
+     * The provider of the recurring elements or null.
+     */
+    private IRecurrenceProvider recurrenceProvider;
+
     /**
      * Default wrap style for item.
      */
@@ -119,10 +224,16 @@ public class PlannerViewer extends StructuredViewer {
         assertElementsNotNull(elements);
         Object[] filtered = filter(elements);
         ILabelProvider labelProvider = (ILabelProvider) getLabelProvider();
-        for (int i = 0; i < filtered.length; i++) {
-            Object element = filtered[i];
-            int ix = indexForElement(element);
-            insertItem(labelProvider, element, ix);
+        // Layout and redraw the planner once.
+        this.planner.beginUpdate();
+        try {
+            for (int i = 0; i < filtered.length; i++) {
+                Object element = filtered[i];
+                int ix = indexForElement(element);
+                insertItem(labelProvider, element, ix);
+            }
+        } finally {
+            this.planner.endUpdate();
         }
     }
 
@@ -134,10 +245,17 @@ public class PlannerViewer extends StructuredViewer {
         return null;
     }
 
+    /**
+     * Find the item of the given element by looping on the planner items. Only
+     * used if the hash lookup is disabled.
+     * 
+     * @see #setUseHashlookup(boolean)
+     */
     @Override
     protected Widget doFindItem(Object element) {
-        PlannerItem[] children = planner.getItems();
-        for (PlannerItem item : children) {
+        int count = planner.getItemCount();
+        for (int i = 0; i < count; i++) {
+            PlannerItem item = planner.getItem(i);
             Object data = item.getData();
             if (data != null && equals(data, element)) {
                 return item;
@@ -162,9 +280,131 @@ public class PlannerViewer extends StructuredViewer {
             }
 
             if (getLabelProvider() instanceof PlannerLabelProvider) {
-                ((PlannerLabelProvider) getLabelProvider()).update(new PlannerViewerItem((PlannerItem) item));
+                // The label provider update many attributes, layout the
+                // planner once.
+                this.planner.beginUpdate();
+                try {
+                    ((PlannerLabelProvider) getLabelProvider()).update(new PlannerViewerItem((PlannerItem) item));
+                } finally {
+                    this.planner.endUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Query the elements of the displayed week if not already loaded, then
+     * schedule the loading of the adjacent weeks. Called when the date
+     * selection of the planner changed.
+     */
+    private void handleDateSelection() {
+        if (!isLoadedByTimeRange() || getInput() == null) {
+            return;
+        }
+        Date start = this.planner.getStartDate();
+        Date end = this.planner.getEndDate();
+        if (this.rangeStart == null || start.before(this.rangeStart) || end.after(this.rangeEnd)) {
+            this.rangeStart = start;
+            this.rangeEnd = end;
+            refresh();
+        }
+        schedulePrefetch();
+    }
+
+    /**
+     * This implementation layout and redraw the planner once for all the
+     * elements of the event.
+     */
+    @Override
+    protected void handleLabelProviderChanged(LabelProviderChangedEvent event) {
+        this.planner.beginUpdate();
+        try {
+            super.handleLabelProviderChanged(event);
+        } finally {
+            this.planner.endUpdate();
+        }
+    }
+
+    /**
+     * Replace the recurring elements by their occurrences within the loaded
+     * time range. The occurrences are expanded week by week and cached.
+     * 
+     * @param elements
+     *            the elements
+     * @return the non-recurring elements and the occurrences
+     */
+    private Object[] expandRecurrences(Object[] elements) {
+        List<Object> result = new ArrayList<Object>(elements.length);
+        Calendar cal = Calendar.getInstance();
+        for (Object element : elements) {
+            RecurrenceRule rule = this.recurrenceProvider.getRecurrence(element);
+            Date start = this.recurrenceProvider.getStartTime(element);
+            Date end = this.recurrenceProvider.getEndTime(element);
+            if (rule == null || start == null || end == null) {
+                result.add(element);
+                continue;
+            }
+            SeriesKey key = new SeriesKey(element, rule, start.getTime(), end.getTime());
+            // An occurrence may overlap two weeks.
+            Set<Occurrence> series = new LinkedHashSet<Occurrence>();
+            cal.setTime(this.rangeStart);
+            while (cal.getTimeInMillis() < this.rangeEnd.getTime()) {
+                long weekStart = cal.getTimeInMillis();
+                cal.add(Calendar.DAY_OF_MONTH, 7);
+                Occurrence[] week = this.occurrences.get(weekStart, key);
+                if (week == null) {
+                    long duration = end.getTime() - start.getTime();
+                    long[] starts = rule.expand(start.getTime(), duration, weekStart, cal.getTimeInMillis());
+                    week = new Occurrence[starts.length];
+                    for (int i = 0; i < starts.length; i++) {
+                        week[i] = new Occurrence(element, starts[i], starts[i] + duration);
+                    }
+                    this.occurrences.put(weekStart, key, week);
+                }
+                series.addAll(Arrays.asList(week));
             }
+            result.addAll(series);
         }
+        return result.toArray();
+    }
+
+    /**
+     * This implementation query the elements of the loaded time range when the
+     * content provider is a {@link ITimeRangeContentProvider} and expand the
+     * occurrences of the recurring elements within this time range. The
+     * displayed week is loaded first and the adjacent weeks are loaded
+     * asynchronously.
+     */
+    @Override
+    protected Object[] getRawChildren(Object parent) {
+        if (parent == null || !isLoadedByTimeRange() || !equals(parent, getRoot())) {
+            return super.getRawChildren(parent);
+        }
+        if (this.rangeStart == null) {
+            this.rangeStart = this.planner.getStartDate();
+            this.rangeEnd = this.planner.getEndDate();
+            schedulePrefetch();
+        }
+        Object[] result;
+        if (getContentProvider() instanceof ITimeRangeContentProvider) {
+            result = ((ITimeRangeContentProvider) getContentProvider()).getElements(parent, this.rangeStart, this.rangeEnd);
+            if (result == null) {
+                result = new Object[0];
+            }
+            assertElementsNotNull(result);
+        } else {
+            result = super.getRawChildren(parent);
+        }
+        return this.recurrenceProvider != null ? expandRecurrences(result) : result;
+    }
+
+    /**
+     * Returns the provider of the recurring elements.
+     * 
+     * @return the recurrence provider or null
+     */
+    public IRecurrenceProvider getRecurrenceProvider() {
+        return this.recurrenceProvider;
     }
 
     /**
@@ -197,6 +437,21 @@ public class PlannerViewer extends StructuredViewer {
         return list;
     }
 
+    /**
+     * This implementation listen to the date selection of the planner to query
+     * the elements of the displayed weeks.
+     */
+    @Override
+    protected void hookControl(Control control) {
+        super.hookControl(control);
+        control.addListener(SWT.Modify, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                handleDateSelection();
+            }
+        });
+    }
+
     /**
      * @param element
      *            the element to insert
@@ -239,6 +494,10 @@ public class PlannerViewer extends StructuredViewer {
      */
     @Override
     protected void inputChanged(Object input, Object oldInput) {
+        // Load the displayed week of the new input.
+        this.rangeStart = null;
+        this.rangeEnd = null;
+        this.occurrences.clear();
         getControl().setRedraw(false);
         try {
             preservingSelection(new Runnable() {
@@ -252,11 +511,19 @@ public class PlannerViewer extends StructuredViewer {
         }
     }
 
+    /**
+     * Check if the elements are loaded for the displayed weeks only: when the
+     * content provider is a {@link ITimeRangeContentProvider} or when the
+     * recurring elements are expanded.
+     */
+    private boolean isLoadedByTimeRange() {
+        return getContentProvider() instanceof ITimeRangeContentProvider || this.recurrenceProvider != null;
+    }
+
     private void insertItem(ILabelProvider labelProvider, Object element, int index) {
         PlannerItem item = new PlannerItem(this.planner, wrap ? SWT.WRAP : SWT.NONE, index);
+        // The item is mapped to the element by associate()
         updateItem(item, element);
-        mapElement(element, getControl()); // must map it, since findItem only
-        // looks in map, if enabled
     }
 
     @Override
@@ -280,74 +547,113 @@ public class PlannerViewer extends StructuredViewer {
      * @since 3.1
      */
     private void internalRefreshAll() {
-        // the parent
-
-        // in the code below, it is important to do all disassociates
-        // before any associates, since a later disassociate can undo an
-        // earlier associate
-        // e.g. if (a, b) is replaced by (b, a), the disassociate of b to
-        // item 1 could undo
-        // the associate of b to item 0.
+        // Layout and redraw the planner once.
+        this.planner.beginUpdate();
+        try {
+            doInternalRefreshAll();
+        } finally {
+            this.planner.endUpdate();
+        }
+    }
+
+    /**
+     * Refresh all of the elements of the planner. Should be called within a
+     * planner update.
+     * <p>
+     * The children are matched with the existing items using the element
+     * comparer, so an item keep its element even if the element moved. Only the
+     * items of the removed elements are disposed and only the new elements get
+     * a new item.
+     * 
+     * @see #internalRefreshAll()
+     */
+    private void doInternalRefreshAll() {
         Object[] children = getSortedChildren(getRoot());
         PlannerItem[] items = this.planner.getItems();
-        int min = Math.min(children.length, items.length);
-        for (int i = 0; i < min; ++i) {
-            PlannerItem item = items[i];
 
-            // if the element is unchanged, update its label if appropriate
-            if (equals(children[i], item.getData())) {
-                updateItem(item, children[i]);
-            } else {
-                // updateItem does an associate(...), which can mess up
-                // the associations if the order of elements has changed.
-                // E.g. (a, b) -> (b, a) first replaces a->0 with b->0, then
-                // replaces b->1 with a->1, but this actually removes b->0.
-                // So, if the object associated with this item has changed,
-                // just disassociate it for now, and update it below.
-                // we also need to reset the item (set its text,images etc. to
-                // default values) because the label decorators rely on this
-                disassociate(item);
+        // Find the item of each child
+        Map<ElementKey, PlannerItem> itemsByElement = new HashMap<ElementKey, PlannerItem>(items.length);
+        for (PlannerItem item : items) {
+            Object data = item.getData();
+            if (data != null) {
+                ElementKey key = new ElementKey(data);
+                if (!itemsByElement.containsKey(key)) {
+                    itemsByElement.put(key, item);
+                }
             }
         }
-        // dispose of all items beyond the end of the current elements
-        if (min < items.length) {
-            for (int i = items.length; --i >= min;) {
+        PlannerItem[] newItems = new PlannerItem[children.length];
+        Set<PlannerItem> reused = new HashSet<PlannerItem>(children.length);
+        for (int i = 0; i < children.length; i++) {
+            newItems[i] = itemsByElement.remove(new ElementKey(children[i]));
+            if (newItems[i] != null) {
+                reused.add(newItems[i]);
+            }
+        }
+
+        // Dispose the items of the removed elements in one pass
+        int[] indices = new int[items.length - reused.size()];
+        int count = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (!reused.contains(items[i])) {
                 disassociate(items[i]);
-                items[i].dispose();
+                indices[count++] = i;
             }
         }
-        // Update items which were dissociated above
-        for (int i = 0; i < min; ++i) {
-            PlannerItem item = items[i];
-            if (item.getData() == null) {
-                updateItem(item, children[i]);
+        this.planner.remove(indices);
+
+        // Update the existing items, then create the items of the new elements
+        for (int i = 0; i < children.length; i++) {
+            if (newItems[i] != null) {
+                updateItem(newItems[i], children[i]);
             }
         }
-        // Add any remaining elements
-        for (int i = min; i < children.length; ++i) {
-            add(children[i]);
+        for (int i = 0; i < children.length; i++) {
+            if (newItems[i] == null) {
+                newItems[i] = new PlannerItem(this.planner, wrap ? SWT.WRAP : SWT.NONE);
+                updateItem(newItems[i], children[i]);
+            }
         }
+
+        // Sort the items as the children
+        this.planner.setItemOrder(newItems);
     }
 
     /**
-     * Removes the given elements from this list viewer.
+     * Removes the given elements from this list viewer. The items are found
+     * using the element map (if enabled) and removed from the planner in a
+     * single pass.
      * 
      * @param elements
      *            the elements to remove
      */
     private void internalRemove(final Object[] elements) {
         Object input = getInput();
+        Set<Widget> removedItems = new HashSet<Widget>();
         for (int i = 0; i < elements.length; ++i) {
             if (equals(elements[i], input)) {
                 setInput(null);
                 return;
             }
-            Widget item = doFindItem(elements[i]);
-            if (item != null) {
+            Widget item = findItem(elements[i]);
+            if (item instanceof PlannerItem) {
                 unmapElement(elements[i], item);
-                item.dispose();
+                removedItems.add(item);
+            }
+        }
+        if (removedItems.isEmpty()) {
+            return;
+        }
+
+        // Find the index of each item in one pass
+        int[] indices = new int[removedItems.size()];
+        int count = 0;
+        for (int i = 0; i < this.planner.getItemCount() && count < indices.length; i++) {
+            if (removedItems.contains(this.planner.getItem(i))) {
+                indices[count++] = i;
             }
         }
+        this.planner.remove(Arrays.copyOf(indices, count));
     }
 
     /**
@@ -385,11 +691,17 @@ public class PlannerViewer extends StructuredViewer {
         if (elements.length == 0) {
             return;
         }
-        preservingSelection(new Runnable() {
-            public void run() {
-                internalRemove(elements);
-            }
-        });
+        // Layout and redraw the planner once.
+        this.planner.beginUpdate();
+        try {
+            preservingSelection(new Runnable() {
+                public void run() {
+                    internalRemove(elements);
+                }
+            });
+        } finally {
+            this.planner.endUpdate();
+        }
     }
 
     @Override
@@ -397,13 +709,72 @@ public class PlannerViewer extends StructuredViewer {
 
     }
 
+    /**
+     * Load the elements of the displayed week and of the previous and next
+     * weeks once the pending events are processed. The items of the elements
+     * outside this time range are disposed.
+     */
+    private void schedulePrefetch() {
+        if (this.prefetchScheduled) {
+            return;
+        }
+        this.prefetchScheduled = true;
+        this.planner.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                PlannerViewer.this.prefetchScheduled = false;
+                if (PlannerViewer.this.planner.isDisposed() || !isLoadedByTimeRange() || getInput() == null) {
+                    return;
+                }
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(PlannerViewer.this.planner.getStartDate());
+                cal.add(Calendar.DAY_OF_MONTH, -7);
+                Date start = cal.getTime();
+                cal.setTime(PlannerViewer.this.planner.getEndDate());
+                cal.add(Calendar.DAY_OF_MONTH, 7);
+                Date end = cal.getTime();
+                if (start.equals(PlannerViewer.this.rangeStart) && end.equals(PlannerViewer.this.rangeEnd)) {
+                    return;
+                }
+                PlannerViewer.this.rangeStart = start;
+                PlannerViewer.this.rangeEnd = end;
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Sets the provider of the recurring elements. The occurrences of the
+     * recurring elements are expanded for the displayed week and the adjacent
+     * weeks only, each occurrence being displayed as an {@link Occurrence}.
+     * The occurrences are expanded again when the date selection of the
+     * planner changed.
+     * <p>
+     * The occurrences are cached by week. The occurrences are expanded again
+     * on refresh if the recurrence rule or the time of the first occurrence
+     * changed. Since the items are associated with the occurrences, the
+     * recurring elements must be refreshed using {@link #refresh()} instead of
+     * {@link #update(Object, String[])}.
+     * 
+     * @param provider
+     *            the recurrence provider or null to display the elements as
+     *            is
+     */
+    public void setRecurrenceProvider(IRecurrenceProvider provider) {
+        this.recurrenceProvider = provider;
+        this.occurrences.clear();
+        if (getInput() != null) {
+            refresh();
+        }
+    }
+
     @Override
     protected void setSelectionToWidget(List in, boolean reveal) {
         if (in == null || in.size() == 0) { // clear selection
             this.planner.setSelection(-1);
         } else {
-            Widget item = doFindItem(in.get(0));
-            if (item != null) {
+            Widget item = findItem(in.get(0));
+            if (item instanceof PlannerItem) {
                 this.planner.setSelection((PlannerItem) item);
             } else {
                 this.planner.setSelection(-1);
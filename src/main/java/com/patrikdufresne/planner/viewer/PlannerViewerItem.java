@@ -135,4 +135,14 @@ public class PlannerViewerItem {
         item.setText(text);
     }
 
+    /**
+     * Sets the text, the time range, the colors and the font of the item at
+     * once.
+     * 
+     * @see PlannerItem#update(String, Date, Date, Color, Color, Color, Font)
+     */
+    public void update(String text, Date start, Date end, Color background, Color borderColor, Color foreground, Font font) {
+        item.update(text, start, end, background, borderColor, foreground, font);
+    }
+
 }
@@ -0,0 +1,437 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Immutable recurrence rule of an element, a subset of the iCalendar
+ * recurrence rule: frequency, interval, days of the week, months, count and
+ * until. The occurrences keep the time of day of the first occurrence (local
+ * time).
+ * <p>
+ * The days of the week limit the occurrences of a daily recurrence and expand
+ * the weekly, monthly and yearly recurrences. The months limit the occurrences
+ * of the daily, weekly and monthly recurrences and expand the yearly
+ * recurrence.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+public final class RecurrenceRule {
+
+    /**
+     * Values for frequency.
+     */
+    public static final int DAILY = 1;
+
+    /**
+     * Values for frequency.
+     */
+    public static final int MONTHLY = 3;
+
+    /**
+     * Values for frequency.
+     */
+    public static final int WEEKLY = 2;
+
+    /**
+     * Values for frequency.
+     */
+    public static final int YEARLY = 4;
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private final int[] byDays;
+
+    private final int[] byMonths;
+
+    private final int count;
+
+    /**
+     * Bit mask of the days of the week or 0 if not set.
+     */
+    private final int dayMask;
+
+    private final int frequency;
+
+    private final int interval;
+
+    /**
+     * Bit mask of the months or 0 if not set.
+     */
+    private final int monthMask;
+
+    private final long until;
+
+    /**
+     * Create a new recurrence rule without limit.
+     * 
+     * @param frequency
+     *            the frequency: DAILY, WEEKLY, MONTHLY or YEARLY
+     * @param interval
+     *            how often the frequency repeats (1 or more)
+     */
+    public RecurrenceRule(int frequency, int interval) {
+        this(frequency, interval, null, null, 0, null);
+    }
+
+    /**
+     * Create a new recurrence rule.
+     * 
+     * @param frequency
+     *            the frequency: DAILY, WEEKLY, MONTHLY or YEARLY
+     * @param interval
+     *            how often the frequency repeats (1 or more)
+     * @param byDays
+     *            the days of the week (<code>Calendar.SUNDAY</code> to
+     *            <code>Calendar.SATURDAY</code>) or null
+     * @param byMonths
+     *            the months (1 to 12) or null
+     * @param count
+     *            the number of occurrences or 0 for no limit
+     * @param until
+     *            the last possible start of an occurrence (inclusive) or null
+     *            for no limit
+     * @exception IllegalArgumentException
+     *                if an argument is out of range
+     */
+    public RecurrenceRule(int frequency, int interval, int[] byDays, int[] byMonths, int count, Date until) {
+        if (frequency < DAILY || frequency > YEARLY || interval < 1 || count < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.count = count;
+        this.until = until != null ? until.getTime() : Long.MAX_VALUE;
+        this.byDays = byDays != null && byDays.length > 0 ? byDays.clone() : null;
+        this.byMonths = byMonths != null && byMonths.length > 0 ? byMonths.clone() : null;
+        int mask = 0;
+        if (this.byDays != null) {
+            for (int day : this.byDays) {
+                if (day < Calendar.SUNDAY || day > Calendar.SATURDAY) throw new IllegalArgumentException();
+                mask |= 1 << day;
+            }
+        }
+        this.dayMask = mask;
+        mask = 0;
+        if (this.byMonths != null) {
+            for (int month : this.byMonths) {
+                if (month < 1 || month > 12) throw new IllegalArgumentException();
+                mask |= 1 << month;
+            }
+        }
+        this.monthMask = mask;
+    }
+
+    /**
+     * Add the occurrences of a period to the given array.
+     * 
+     * @param cal
+     *            a calendar set to the start of the period (modified)
+     * @param first
+     *            a calendar set to the first occurrence
+     * @param occurrences
+     *            the array receiving the occurrences
+     * @return the number of occurrences
+     */
+    private int addOccurrences(Calendar cal, Calendar first, long[] occurrences) {
+        int size = 0;
+        switch (this.frequency) {
+        case DAILY:
+            if (matches(cal)) occurrences[size++] = occurrence(cal, first);
+            break;
+        case WEEKLY:
+            for (int i = 0; i < 7; i++) {
+                if (this.dayMask == 0 ? cal.get(Calendar.DAY_OF_WEEK) == first.get(Calendar.DAY_OF_WEEK) : matches(cal)) {
+                    if (this.monthMask == 0 || (this.monthMask & 1 << cal.get(Calendar.MONTH) + 1) != 0) {
+                        occurrences[size++] = occurrence(cal, first);
+                    }
+                }
+                cal.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            break;
+        case MONTHLY:
+            if (this.monthMask == 0 || (this.monthMask & 1 << cal.get(Calendar.MONTH) + 1) != 0) {
+                size = addOccurrencesOfMonth(cal, first, occurrences, size);
+            }
+            break;
+        case YEARLY:
+            for (int month = 0; month < 12; month++) {
+                boolean included;
+                if (this.monthMask != 0) {
+                    included = (this.monthMask & 1 << month + 1) != 0;
+                } else {
+                    included = this.dayMask != 0 || month == first.get(Calendar.MONTH);
+                }
+                if (included) {
+                    cal.set(Calendar.MONTH, month);
+                    cal.set(Calendar.DAY_OF_MONTH, 1);
+                    size = addOccurrencesOfMonth(cal, first, occurrences, size);
+                }
+            }
+            break;
+        }
+        return size;
+    }
+
+    /**
+     * Add the occurrences of a month: every day matching the days of the week
+     * or the day of month of the first occurrence.
+     */
+    private int addOccurrencesOfMonth(Calendar cal, Calendar first, long[] occurrences, int size) {
+        int month = cal.get(Calendar.MONTH);
+        if (this.dayMask == 0) {
+            int day = first.get(Calendar.DAY_OF_MONTH);
+            if (day <= cal.getActualMaximum(Calendar.DAY_OF_MONTH)) {
+                cal.set(Calendar.DAY_OF_MONTH, day);
+                occurrences[size++] = occurrence(cal, first);
+            }
+            return size;
+        }
+        while (cal.get(Calendar.MONTH) == month) {
+            if ((this.dayMask & 1 << cal.get(Calendar.DAY_OF_WEEK)) != 0) {
+                occurrences[size++] = occurrence(cal, first);
+            }
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof RecurrenceRule)) return false;
+        RecurrenceRule other = (RecurrenceRule) obj;
+        return this.frequency == other.frequency
+                && this.interval == other.interval
+                && this.count == other.count
+                && this.until == other.until
+                && this.dayMask == other.dayMask
+                && this.monthMask == other.monthMask;
+    }
+
+    /**
+     * Compute the start of the occurrences intersecting a time range. Only the
+     * periods around the time range are computed, unless the number of
+     * occurrences is limited and the periods doesn't contain the same number
+     * of occurrences.
+     * 
+     * @param start
+     *            the start of the first occurrence
+     * @param duration
+     *            the duration of an occurrence
+     * @param rangeStart
+     *            the start of the time range (inclusive)
+     * @param rangeEnd
+     *            the end of the time range (exclusive)
+     * @return the start of the occurrences in ascending order
+     */
+    long[] expand(long start, long duration, long rangeStart, long rangeEnd) {
+        Calendar first = Calendar.getInstance();
+        first.setTimeInMillis(start);
+        Calendar cal = Calendar.getInstance();
+        long[] occurrences = new long[31 * 12];
+        long[] result = new long[8];
+        int size = 0;
+
+        // Skip the periods ending before the time range.
+        int period = 0;
+        int index = 0;
+        int perPeriod = getOccurrencesPerPeriod();
+        if (this.count == 0 || perPeriod > 0) {
+            period = Math.max(0, getPeriodsBefore(first, rangeStart - duration) / this.interval - 1);
+        }
+        if (period > 0 && this.count > 0) {
+            periodStart(cal, first, 0);
+            int n = addOccurrences(cal, first, occurrences);
+            for (int i = 0; i < n; i++) {
+                if (occurrences[i] >= start) index++;
+            }
+            index += (period - 1) * perPeriod;
+        }
+
+        for (;; period++) {
+            periodStart(cal, first, period);
+            if (cal.getTimeInMillis() >= rangeEnd || cal.getTimeInMillis() > this.until) break;
+            int n = addOccurrences(cal, first, occurrences);
+            for (int i = 0; i < n; i++) {
+                long occurrence = occurrences[i];
+                if (occurrence < start) continue;
+                if (occurrence >= rangeEnd || occurrence > this.until || (this.count > 0 && index >= this.count)) {
+                    return Arrays.copyOf(result, size);
+                }
+                index++;
+                if (occurrence + duration > rangeStart || occurrence >= rangeStart) {
+                    if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                    result[size++] = occurrence;
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the days of the week.
+     * 
+     * @return the days of the week (<code>Calendar.SUNDAY</code> to
+     *         <code>Calendar.SATURDAY</code>) or null
+     */
+    public int[] getByDays() {
+        return this.byDays != null ? this.byDays.clone() : null;
+    }
+
+    /**
+     * Returns the months.
+     * 
+     * @return the months (1 to 12) or null
+     */
+    public int[] getByMonths() {
+        return this.byMonths != null ? this.byMonths.clone() : null;
+    }
+
+    /**
+     * Returns the number of occurrences.
+     * 
+     * @return the number of occurrences or 0 for no limit
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the frequency.
+     * 
+     * @return DAILY, WEEKLY, MONTHLY or YEARLY
+     */
+    public int getFrequency() {
+        return this.frequency;
+    }
+
+    /**
+     * Returns how often the frequency repeats.
+     * 
+     * @return the interval
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Returns the number of occurrences of every period except the first one
+     * or -1 if it may change from a period to another.
+     */
+    private int getOccurrencesPerPeriod() {
+        if (this.frequency == DAILY && this.dayMask == 0 && this.monthMask == 0) {
+            return 1;
+        } else if (this.frequency == WEEKLY && this.monthMask == 0) {
+            return this.dayMask == 0 ? 1 : Integer.bitCount(this.dayMask);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of complete periods (ignoring the interval) between
+     * the first occurrence and the given time. May be lower than the real
+     * value by one.
+     */
+    private int getPeriodsBefore(Calendar first, long time) {
+        if (time <= first.getTimeInMillis()) return 0;
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        long days = (time - first.getTimeInMillis()) / DAY;
+        switch (this.frequency) {
+        case DAILY:
+            return (int) Math.min(Integer.MAX_VALUE, days);
+        case WEEKLY:
+            return (int) Math.min(Integer.MAX_VALUE, days / 7);
+        case MONTHLY:
+            return (cal.get(Calendar.YEAR) - first.get(Calendar.YEAR)) * 12 + cal.get(Calendar.MONTH) - first.get(Calendar.MONTH);
+        default:
+            return cal.get(Calendar.YEAR) - first.get(Calendar.YEAR);
+        }
+    }
+
+    /**
+     * Returns the last possible start of an occurrence.
+     * 
+     * @return the date or null for no limit
+     */
+    public Date getUntil() {
+        return this.until != Long.MAX_VALUE ? new Date(this.until) : null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.frequency;
+        result = 31 * result + this.interval;
+        result = 31 * result + this.count;
+        result = 31 * result + (int) (this.until ^ (this.until >>> 32));
+        result = 31 * result + this.dayMask;
+        result = 31 * result + this.monthMask;
+        return result;
+    }
+
+    /**
+     * Check if the day matches the days of the week and the months.
+     */
+    private boolean matches(Calendar cal) {
+        return (this.dayMask == 0 || (this.dayMask & 1 << cal.get(Calendar.DAY_OF_WEEK)) != 0)
+                && (this.monthMask == 0 || (this.monthMask & 1 << cal.get(Calendar.MONTH) + 1) != 0);
+    }
+
+    /**
+     * Returns the time of the occurrence on the day of the given calendar.
+     */
+    private static long occurrence(Calendar cal, Calendar first) {
+        Calendar occurrence = (Calendar) cal.clone();
+        occurrence.set(Calendar.HOUR_OF_DAY, first.get(Calendar.HOUR_OF_DAY));
+        occurrence.set(Calendar.MINUTE, first.get(Calendar.MINUTE));
+        occurrence.set(Calendar.SECOND, first.get(Calendar.SECOND));
+        occurrence.set(Calendar.MILLISECOND, first.get(Calendar.MILLISECOND));
+        return occurrence.getTimeInMillis();
+    }
+
+    /**
+     * Set the calendar to the start of the given period: the day, the first day
+     * of the week, of the month or of the year.
+     */
+    private void periodStart(Calendar cal, Calendar first, int period) {
+        cal.clear();
+        cal.set(first.get(Calendar.YEAR), first.get(Calendar.MONTH), first.get(Calendar.DAY_OF_MONTH));
+        switch (this.frequency) {
+        case DAILY:
+            cal.add(Calendar.DAY_OF_MONTH, period * this.interval);
+            break;
+        case WEEKLY:
+            int offset = cal.get(Calendar.DAY_OF_WEEK) - cal.getFirstDayOfWeek();
+            cal.add(Calendar.DAY_OF_MONTH, -(offset < 0 ? offset + 7 : offset));
+            cal.add(Calendar.DAY_OF_MONTH, period * this.interval * 7);
+            break;
+        case MONTHLY:
+            cal.set(Calendar.DAY_OF_MONTH, 1);
+            cal.add(Calendar.MONTH, period * this.interval);
+            break;
+        case YEARLY:
+            cal.set(Calendar.DAY_OF_YEAR, 1);
+            cal.add(Calendar.YEAR, period * this.interval);
+            break;
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ColumnLayoutTest {
+
+    /**
+     * Reference implementation: the greedy column filling previously used by
+     * the planner.
+     */
+    private static int[][] legacyLayout(long[] starts, long[] ends) {
+        List<Integer> remaining = new ArrayList<Integer>();
+        for (int i = 0; i < starts.length; i++) {
+            remaining.add(Integer.valueOf(i));
+        }
+        List<List<Integer>> layout = new ArrayList<List<Integer>>();
+        while (0 < remaining.size()) {
+            List<Integer> column = new ArrayList<Integer>();
+            for (Integer i : remaining) {
+                boolean compatible = true;
+                for (Integer j : column) {
+                    compatible &= !intersect(starts[i], ends[i], starts[j], ends[j]);
+                }
+                if (compatible) {
+                    column.add(i);
+                }
+            }
+            remaining.removeAll(column);
+            layout.add(column);
+        }
+
+        int[] columns = new int[starts.length];
+        int[] extendTo = new int[starts.length];
+        for (int rowIndex = 0; rowIndex < layout.size(); rowIndex++) {
+            for (Integer i : layout.get(rowIndex)) {
+                columns[i] = rowIndex;
+                int to = rowIndex + 1;
+                boolean isCompatible = true;
+                while (isCompatible && to < layout.size()) {
+                    for (Integer j : layout.get(to)) {
+                        isCompatible &= !intersect(starts[i], ends[i], starts[j], ends[j]);
+                    }
+                    to++;
+                }
+                if (!isCompatible) {
+                    to--;
+                }
+                extendTo[i] = to;
+            }
+        }
+        return new int[][] { columns, extendTo, new int[] { layout.size() } };
+    }
+
+    private static boolean intersect(long start1, long end1, long start2, long end2) {
+        return start2 < end1 && start1 < end2;
+    }
+
+    private static void assertSameLayout(long[] starts, long[] ends) {
+        int[][] expected = legacyLayout(starts, ends);
+        ColumnLayout layout = new ColumnLayout(starts, ends);
+        int[] columns = new int[starts.length];
+        int[] extendTo = new int[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            columns[i] = layout.getColumn(i);
+            extendTo[i] = layout.getExtendTo(i);
+        }
+        assertEquals(expected[2][0], layout.getColumnCount());
+        assertArrayEquals(expected[0], columns);
+        assertArrayEquals(expected[1], extendTo);
+    }
+
+    /**
+     * Check the layout of an empty list.
+     */
+    @Test
+    public void testEmpty() {
+        ColumnLayout layout = new ColumnLayout(new long[0], new long[0]);
+        assertEquals(0, layout.getColumnCount());
+    }
+
+    /**
+     * Check a simple case with three overlapping events.
+     */
+    @Test
+    public void testOverlapping() {
+        long[] starts = new long[] { 0, 10, 20, 30 };
+        long[] ends = new long[] { 25, 15, 40, 35 };
+        ColumnLayout layout = new ColumnLayout(starts, ends);
+        assertEquals(2, layout.getColumnCount());
+        assertEquals(0, layout.getColumn(0));
+        assertEquals(1, layout.getColumn(1));
+        assertEquals(1, layout.getColumn(2));
+        assertEquals(0, layout.getColumn(3));
+        // The second event is in the last column, the last one may not extend.
+        assertEquals(2, layout.getExtendTo(1));
+        assertEquals(1, layout.getExtendTo(3));
+        assertSameLayout(starts, ends);
+    }
+
+    /**
+     * Check zero-length and identical time ranges.
+     */
+    @Test
+    public void testDegenerated() {
+        assertSameLayout(new long[] { 5, 5, 5, 0, 5, 6 }, new long[] { 5, 5, 9, 5, 10, 6 });
+        assertSameLayout(new long[] { 5, 0, 5, 5 }, new long[] { 9, 10, 5, 5 });
+    }
+
+    /**
+     * Compare the layout with the legacy algorithm using random events.
+     */
+    @Test
+    public void testRandom() {
+        Random random = new Random(1234);
+        for (int run = 0; run < 500; run++) {
+            int count = random.nextInt(60);
+            // Use a small range to create a lot of intersections.
+            int range = 1 + random.nextInt(200);
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = random.nextInt(range);
+                ends[i] = starts[i] + random.nextInt(range / 2 + 1);
+            }
+            assertSameLayout(starts, ends);
+        }
+    }
+
+    /**
+     * Check the number of columns of each cluster.
+     */
+    @Test
+    public void testClusters() {
+        long[] starts = new long[] { 0, 10, 50, 55, 60 };
+        long[] ends = new long[] { 20, 30, 70, 65, 62 };
+        ColumnLayout layout = new ColumnLayout(starts, ends);
+        assertEquals(3, layout.getColumnCount());
+        assertArrayEquals(new int[] { 0, 0, 1, 1, 1 }, ColumnLayout.computeClusters(starts, ends));
+        assertEquals(2, layout.getClusterColumnCount(0));
+        assertEquals(2, layout.getClusterColumnCount(1));
+        assertEquals(3, layout.getClusterColumnCount(4));
+    }
+
+    /**
+     * Check the intersecting time ranges are in the same cluster using random
+     * events.
+     */
+    @Test
+    public void testRandomClusters() {
+        Random random = new Random(1234);
+        for (int run = 0; run < 500; run++) {
+            int count = random.nextInt(60);
+            int range = 1 + random.nextInt(400);
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = random.nextInt(range);
+                ends[i] = starts[i] + random.nextInt(range / 8 + 1);
+            }
+            ColumnLayout layout = new ColumnLayout(starts, ends);
+            int[] clusters = ColumnLayout.computeClusters(starts, ends);
+            for (int i = 0; i < count; i++) {
+                assertTrue(layout.getColumn(i) < layout.getClusterColumnCount(i));
+                for (int j = 0; j < count; j++) {
+                    if (intersect(starts[i], ends[i], starts[j], ends[j])) {
+                        assertEquals(clusters[i], clusters[j]);
+                    }
+                    if (clusters[i] == clusters[j]) {
+                        assertEquals(layout.getClusterColumnCount(i), layout.getClusterColumnCount(j));
+                    }
+                }
+            }
+        }
+    }
+
+}
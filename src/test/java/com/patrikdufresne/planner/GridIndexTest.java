@@ -0,0 +1,81 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GridIndexTest {
+
+    /**
+     * Check the lookup in an empty index.
+     */
+    @Test
+    public void testEmpty() {
+        GridIndex index = new GridIndex(10, 10);
+        assertEquals(-1, index.find(0, 0));
+    }
+
+    /**
+     * Check the last rectangle added wins when rectangles overlap.
+     */
+    @Test
+    public void testOverlapping() {
+        GridIndex index = new GridIndex(10, 10);
+        index.add(0, 0, 0, 100, 100);
+        index.add(1, 20, 20, 10, 10);
+        index.add(2, 25, -5, 10, 30);
+        assertEquals(0, index.find(0, 0));
+        assertEquals(1, index.find(20, 20));
+        assertEquals(2, index.find(25, 20));
+        assertEquals(2, index.find(25, -5));
+        assertEquals(0, index.find(99, 99));
+        assertEquals(-1, index.find(100, 99));
+        assertEquals(-1, index.find(-1, 50));
+    }
+
+    /**
+     * Compare the lookup with a linear scan using random rectangles.
+     */
+    @Test
+    public void testRandom() {
+        Random random = new Random(1234);
+        for (int run = 0; run < 100; run++) {
+            int count = random.nextInt(200);
+            int[][] rects = new int[count][];
+            GridIndex index = new GridIndex(1 + random.nextInt(50), 1 + random.nextInt(50));
+            for (int i = 0; i < count; i++) {
+                rects[i] = new int[] { random.nextInt(400) - 50, random.nextInt(400) - 50, random.nextInt(80), random.nextInt(80) };
+                index.add(i, rects[i][0], rects[i][1], rects[i][2], rects[i][3]);
+            }
+            for (int p = 0; p < 200; p++) {
+                int x = random.nextInt(500) - 75;
+                int y = random.nextInt(500) - 75;
+                int expected = -1;
+                for (int i = 0; i < count; i++) {
+                    if (x >= rects[i][0] && y >= rects[i][1] && x < rects[i][0] + rects[i][2] && y < rects[i][1] + rects[i][3]) {
+                        expected = i;
+                    }
+                }
+                assertEquals(expected, index.find(x, y));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.swt.graphics.Rectangle;
+import org.junit.Test;
+
+public class ItemBoundsTest {
+
+    private static void assertBounds(Rectangle[] expected, Rectangle[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].x, actual[i].x);
+            assertEquals(expected[i].y, actual[i].y);
+            assertEquals(expected[i].width, actual[i].width);
+            assertEquals(expected[i].height, actual[i].height);
+        }
+    }
+
+    /**
+     * Check an item never layout doesn't have bounds.
+     */
+    @Test
+    public void testNone() {
+        ItemBounds bounds = new ItemBounds();
+        assertNull(bounds.get(ItemBounds.NONE, 0));
+        assertFalse(bounds.equals(ItemBounds.NONE, 0, new Rectangle[0]));
+    }
+
+    /**
+     * Check the rectangles are overwritten if their number doesn't change.
+     */
+    @Test
+    public void testSet() {
+        ItemBounds bounds = new ItemBounds();
+        Rectangle[] rects1 = new Rectangle[] { new Rectangle(1, 2, 3, 4) };
+        Rectangle[] rects2 = new Rectangle[] { new Rectangle(5, 6, 7, 8), new Rectangle(9, 10, 11, 12) };
+        int offset1 = bounds.set(ItemBounds.NONE, 0, rects1);
+        int offset2 = bounds.set(ItemBounds.NONE, 0, rects2);
+        assertBounds(rects1, bounds.get(offset1, 1));
+        assertBounds(rects2, bounds.get(offset2, 2));
+        assertTrue(bounds.equals(offset2, 2, rects2));
+        assertFalse(bounds.equals(offset2, 2, new Rectangle[] { rects2[0], rects1[0] }));
+
+        // Same number of rectangles
+        Rectangle[] rects3 = new Rectangle[] { new Rectangle(0, 0, 10, 10) };
+        assertEquals(offset1, bounds.set(offset1, 1, rects3));
+        assertBounds(rects3, bounds.get(offset1, 1));
+
+        // Different number of rectangles
+        int offset3 = bounds.set(offset1, 1, rects2);
+        assertTrue(offset3 != offset1);
+        assertBounds(rects2, bounds.get(offset3, 2));
+        assertBounds(rects2, bounds.get(offset2, 2));
+    }
+
+    /**
+     * Check the rectangles are moved.
+     */
+    @Test
+    public void testTranslate() {
+        ItemBounds bounds = new ItemBounds();
+        int offset = bounds.set(ItemBounds.NONE, 0, new Rectangle[] { new Rectangle(1, 2, 3, 4), new Rectangle(5, 6, 7, 8) });
+        bounds.translate(offset, 2, 10, -1);
+        assertBounds(new Rectangle[] { new Rectangle(11, 1, 3, 4), new Rectangle(15, 5, 7, 8) }, bounds.get(offset, 2));
+    }
+
+}
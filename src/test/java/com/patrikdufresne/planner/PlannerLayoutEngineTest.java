@@ -0,0 +1,215 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.eclipse.swt.graphics.Rectangle;
+import org.junit.Test;
+
+import com.patrikdufresne.planner.WeekLayoutCache.WeekLayout;
+
+public class PlannerLayoutEngineTest {
+
+    private static void assertBounds(int x, int y, int width, int height, Rectangle bound) {
+        assertEquals(x, bound.x);
+        assertEquals(y, bound.y);
+        assertEquals(width, bound.width);
+        assertEquals(height, bound.height);
+    }
+
+    /**
+     * Create an engine for the week of 2013-03-10 (daylight saving time change
+     * in New York). The cells are 100 pixels wide and 20 pixels high.
+     */
+    private static PlannerLayoutEngine createEngine(Calendar cal, int longEventRowCount) {
+        PlannerLayoutEngine engine = new PlannerLayoutEngine();
+        engine.setWeek(cal);
+        engine.setGeometry(new Rectangle(0, 0, 700, 960), new Rectangle(0, -50, 700, 50), longEventRowCount);
+        return engine;
+    }
+
+    private static Calendar createWeek() {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("America/New_York"));
+        cal.clear();
+        cal.set(2013, Calendar.MARCH, 10);
+        return cal;
+    }
+
+    private static long time(Calendar week, int day, int hour, int minute) {
+        Calendar cal = (Calendar) week.clone();
+        cal.add(Calendar.DAY_OF_MONTH, day);
+        cal.set(Calendar.HOUR_OF_DAY, hour);
+        cal.set(Calendar.MINUTE, minute);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Check the bounds of a short event, including the day of the daylight
+     * saving time change.
+     */
+    @Test
+    public void testShortEvent() {
+        Calendar week = createWeek();
+        PlannerLayoutEngine engine = createEngine(week, 0);
+        assertEquals(100, engine.getCellWidth());
+        assertEquals(20, engine.getCellHeight());
+        assertEquals(week.getTimeInMillis(), engine.getWeekStart());
+        assertEquals(time(week, 7, 0, 0), engine.getWeekEnd());
+
+        Rectangle[] bounds = engine.layoutItem(time(week, 1, 9, 0), time(week, 1, 10, 30), false);
+        assertEquals(1, bounds.length);
+        assertBounds(100, 360, 100, 60, bounds[0]);
+
+        // The day is 23 hours long.
+        bounds = engine.layoutItem(time(week, 0, 9, 0), time(week, 0, 10, 0), false);
+        assertBounds(0, 360, 100, 40, bounds[0]);
+
+        // Crossing midnight
+        bounds = engine.layoutItem(time(week, 2, 23, 0), time(week, 3, 1, 0), false);
+        assertEquals(2, bounds.length);
+        assertBounds(200, 920, 100, 40, bounds[0]);
+        assertBounds(300, 0, 100, 40, bounds[1]);
+    }
+
+    /**
+     * Check the bounds of a short event using rows of 15 minutes and 2 hours.
+     */
+    @Test
+    public void testRowDuration() {
+        Calendar week = createWeek();
+        PlannerLayoutEngine engine = createEngine(week, 0);
+        engine.setRowDuration(15 * 60 * 1000);
+        assertEquals(96, engine.getRowCount());
+        assertEquals(10, engine.getCellHeight());
+        Rectangle[] bounds = engine.layoutItem(time(week, 1, 9, 0), time(week, 1, 10, 30), false);
+        assertBounds(100, 360, 100, 60, bounds[0]);
+        bounds = engine.layoutItem(time(week, 1, 9, 15), time(week, 1, 9, 30), false);
+        assertBounds(100, 370, 100, 10, bounds[0]);
+
+        // The time range is rounded to the rows.
+        engine.setRowDuration(2 * 60 * 60 * 1000);
+        assertEquals(12, engine.getRowCount());
+        assertEquals(80, engine.getCellHeight());
+        bounds = engine.layoutItem(time(week, 1, 9, 0), time(week, 1, 10, 30), false);
+        assertBounds(100, 320, 100, 80, bounds[0]);
+    }
+
+    /**
+     * Check a row duration must divide a day.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowDurationInvalid() {
+        new PlannerLayoutEngine().setRowDuration(7 * 60 * 1000);
+    }
+
+    /**
+     * Check the time of a location is the start of its row, including the day
+     * of the daylight saving time change.
+     */
+    @Test
+    public void testGetTime() {
+        Calendar week = createWeek();
+        PlannerLayoutEngine engine = createEngine(week, 0);
+        assertEquals(time(week, 1, 9, 0), engine.getTime(150, 365));
+        assertEquals(time(week, 1, 9, 30), engine.getTime(199, 380));
+        assertEquals(time(week, 0, 0, 0), engine.getTime(-10, -10));
+        assertEquals(time(week, 6, 23, 30), engine.getTime(800, 1000));
+
+        // The day is 23 hours long.
+        assertEquals(time(week, 0, 9, 0), engine.getTime(50, 360));
+        assertEquals(time(week, 0, 1, 30), engine.getTime(50, 60));
+        for (long time : new long[] { time(week, 0, 1, 0), time(week, 0, 3, 0), time(week, 0, 23, 30) }) {
+            Rectangle bound = engine.layoutItem(time, time + 30 * 60 * 1000, false)[0];
+            assertEquals(time, engine.getTime(bound.x, bound.y));
+        }
+    }
+
+    /**
+     * Check the daylight saving time change of a week before 1970 (negative
+     * times) is found.
+     */
+    @Test
+    public void testShortEventBefore1970() {
+        Calendar week = new GregorianCalendar(TimeZone.getTimeZone("America/New_York"));
+        week.clear();
+        week.set(1960, Calendar.APRIL, 24);
+        PlannerLayoutEngine engine = createEngine(week, 0);
+        Rectangle[] bounds = engine.layoutItem(time(week, 0, 9, 0), time(week, 0, 10, 0), false);
+        assertBounds(0, 360, 100, 40, bounds[0]);
+        assertEquals(time(week, 0, 9, 0), engine.getTime(0, 360));
+    }
+
+    /**
+     * Check the bounds and the time of a location follow the scrolled grid.
+     */
+    @Test
+    public void testTranslate() {
+        Calendar week = createWeek();
+        PlannerLayoutEngine engine = createEngine(week, 1);
+        engine.translate(-30, -100);
+        Rectangle[] bounds = engine.layoutItem(time(week, 1, 9, 0), time(week, 1, 10, 30), false);
+        assertBounds(70, 260, 100, 60, bounds[0]);
+        assertEquals(time(week, 1, 9, 0), engine.getTime(70, 260));
+        // The long event cells only move horizontally.
+        bounds = engine.layoutItem(time(week, 1, 0, 0), time(week, 3, 0, 0), true);
+        assertBounds(70, -50, 200, 40, bounds[0]);
+    }
+
+    /**
+     * Check the bounds of a long event.
+     */
+    @Test
+    public void testLongEvent() {
+        Calendar week = createWeek();
+        PlannerLayoutEngine engine = createEngine(week, 2);
+        assertEquals(20, engine.getLongEventCellHeight());
+        Rectangle[] bounds = engine.layoutItem(time(week, 1, 0, 0), time(week, 3, 0, 0), true);
+        assertEquals(1, bounds.length);
+        assertBounds(100, -50, 200, 20, bounds[0]);
+    }
+
+    /**
+     * Check the events of a cluster share the cell width.
+     */
+    @Test
+    public void testLayoutEvents() {
+        Calendar week = createWeek();
+        long[] starts = new long[] { time(week, 1, 9, 0), time(week, 1, 9, 0), time(week, 2, 9, 0), time(week, 1, 0, 0) };
+        long[] ends = new long[] { time(week, 1, 10, 0), time(week, 1, 11, 0), time(week, 2, 10, 0), time(week, 3, 0, 0) };
+        WeekLayout layout = PlannerLayoutEngine.createWeekLayout(new int[] { 0, 1, 2, 3 }, starts, ends);
+        assertEquals(2, layout.shortEventsLayout.getColumnCount());
+        assertEquals(1, layout.longEventsLayout.getColumnCount());
+
+        PlannerLayoutEngine engine = createEngine(week, layout.longEventsLayout.getColumnCount());
+        Rectangle[][] bounds = engine.layoutEvents(new long[] { starts[0], starts[1], starts[2] }, new long[] { ends[0], ends[1], ends[2] },
+                layout.shortEventsLayout, false);
+        // The available space (cell width less the spacing) is shared. The
+        // first event overlap the next column.
+        assertBounds(100, 360, 76, 40, bounds[0][0]);
+        assertBounds(145, 360, 45, 80, bounds[1][0]);
+        // Alone in its cluster
+        assertBounds(200, 360, 90, 40, bounds[2][0]);
+
+        bounds = engine.layoutEvents(new long[] { starts[3] }, new long[] { ends[3] }, layout.longEventsLayout, true);
+        assertBounds(100, -50, 200, 40, bounds[0][0]);
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import static com.patrikdufresne.planner.test.PlannerTest.createItem;
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.eclipse.swt.SWT;
+import org.junit.Test;
+
+import com.patrikdufresne.planner.test.AbstractSWTTestCase;
+
+/**
+ * Check which items are layout by the planner, using the number of events
+ * layout by its layout engine.
+ */
+public class PlannerLayoutTest extends AbstractSWTTestCase {
+
+    /**
+     * Check only the items sharing a cluster with the old or new time range
+     * of a moved item are layout.
+     */
+    @Test
+    public void testMove() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+        createItem(planner, start, 2);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.add(Calendar.DATE, 1);
+        createItem(planner, cal.getTime(), 2);
+        PlannerItem item3 = createItem(planner, cal.getTime(), 3);
+
+        // Move the third item later : the second and third items are layout.
+        int count = planner.layoutEngine.getLayoutCount();
+        cal.add(Calendar.HOUR_OF_DAY, 4);
+        Date newStart = cal.getTime();
+        cal.add(Calendar.HOUR_OF_DAY, 1);
+        item3.update(item3.getText(), newStart, cal.getTime(), null, null, null, null);
+        assertEquals(count + 2, planner.layoutEngine.getLayoutCount());
+    }
+
+    /**
+     * Check an update without any change doesn't layout the items.
+     */
+    @Test
+    public void testUpdate() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        PlannerItem item = createItem(planner, planner.getStartDate(), 2);
+        int count = planner.layoutEngine.getLayoutCount();
+        item.update(item.getText(), item.getStartTime(), item.getEndTime(), null, null, null, null);
+        assertEquals(count, planner.layoutEngine.getLayoutCount());
+
+        // Changing the colors only redraw the item.
+        item.update(item.getText(), item.getStartTime(), item.getEndTime(), getShell().getDisplay().getSystemColor(SWT.COLOR_RED), null, null, null);
+        assertEquals(count, planner.layoutEngine.getLayoutCount());
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.patrikdufresne.planner.WeekLayoutCache.WeekLayout;
+
+public class WeekLayoutCacheTest {
+
+    private static WeekLayout createLayout() {
+        return new WeekLayout(new int[0], new ColumnLayout(new long[0], new long[0]), new ColumnLayout(new long[0], new long[0]));
+    }
+
+    /**
+     * Check the least recently used week is removed.
+     */
+    @Test
+    public void testEviction() {
+        WeekLayoutCache cache = new WeekLayoutCache(2);
+        WeekLayout layout1 = createLayout();
+        WeekLayout layout2 = createLayout();
+        cache.put(1, 0, layout1);
+        cache.put(2, 0, layout2);
+        assertSame(layout1, cache.get(1, 0));
+
+        // Week 2 is the least recently used
+        cache.put(3, 0, createLayout());
+        assertSame(layout1, cache.get(1, 0));
+        assertNull(cache.get(2, 0));
+        assertTrue(cache.contains(3, 0));
+    }
+
+    /**
+     * Check the layouts are discarded when the items change.
+     */
+    @Test
+    public void testVersion() {
+        WeekLayoutCache cache = new WeekLayoutCache(2);
+        cache.put(1, 0, createLayout());
+        assertNull(cache.get(1, 1));
+        assertFalse(cache.contains(1, 0));
+
+        // A layout computed with previous items is ignored
+        cache.put(1, 0, createLayout());
+        assertNull(cache.get(1, 1));
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.example;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import com.patrikdufresne.planner.Planner;
+import com.patrikdufresne.planner.PlannerItem;
+
+/**
+ * Microbenchmark of the planner hit testing : the mouse is moved over every
+ * pixel of a week containing 5000 items. The lookup done by
+ * {@link Planner#getItem(Point)} is compared with a linear scan of the item
+ * bounds.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class PlannerHitTestBenchmark {
+
+    private static final int ITEM_COUNT = 5000;
+
+    private static final int RUN_COUNT = 5;
+
+    /**
+     * Reference implementation: scan every item bounds.
+     */
+    private static PlannerItem linearScan(PlannerItem[] items, Point pt) {
+        PlannerItem found = null;
+        for (PlannerItem item : items) {
+            Rectangle[] bounds = item.getBounds();
+            if (bounds == null) continue;
+            for (Rectangle bound : bounds) {
+                if (bound.contains(pt)) {
+                    found = item;
+                }
+            }
+        }
+        return found;
+    }
+
+    public static void main(String[] args) {
+        Display display = new Display();
+        Shell shell = new Shell(display);
+        shell.setLayout(new FillLayout());
+        shell.setSize(1200, 900);
+        Planner planner = new Planner(shell, SWT.NONE);
+        // Layout synchronously so the bounds are available.
+        planner.setLayoutThreshold(Integer.MAX_VALUE);
+
+        // Populate the week with short events.
+        Random random = new Random(1234);
+        Calendar cal = Calendar.getInstance();
+        planner.beginUpdate();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            cal.setTime(planner.getStartDate());
+            cal.add(Calendar.MINUTE, random.nextInt(7 * 24 * 4) * 15);
+            Date start = cal.getTime();
+            cal.add(Calendar.MINUTE, 30 + random.nextInt(8) * 15);
+            PlannerItem item = new PlannerItem(planner, SWT.NONE);
+            item.setStartTime(start);
+            item.setEndTime(cal.getTime());
+            item.setText("Event " + i);
+        }
+        planner.endUpdate();
+        shell.open();
+
+        PlannerItem[] items = planner.getItems();
+        Rectangle area = planner.getClientArea();
+        Point pt = new Point(0, 0);
+        for (int run = 0; run < RUN_COUNT; run++) {
+            // Move the mouse over the planner.
+            long time = System.nanoTime();
+            int count = 0;
+            for (pt.y = area.y; pt.y < area.y + area.height; pt.y += 2) {
+                for (pt.x = area.x; pt.x < area.x + area.width; pt.x += 2) {
+                    planner.getItem(pt);
+                    count++;
+                }
+            }
+            long indexed = System.nanoTime() - time;
+
+            time = System.nanoTime();
+            for (pt.y = area.y; pt.y < area.y + area.height; pt.y += 2) {
+                for (pt.x = area.x; pt.x < area.x + area.width; pt.x += 2) {
+                    linearScan(items, pt);
+                }
+            }
+            long linear = System.nanoTime() - time;
+
+            System.out.println(String.format("run %d: %d lookups, getItem(Point) %.0f ns/lookup, linear scan %.0f ns/lookup", Integer.valueOf(run),
+                    Integer.valueOf(count), Double.valueOf((double) indexed / count), Double.valueOf((double) linear / count)));
+        }
+
+        shell.dispose();
+        display.dispose();
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.example;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import com.patrikdufresne.planner.Planner;
+import com.patrikdufresne.planner.PlannerItem;
+
+/**
+ * Heap footprint of a planner containing 100k items spread over a year. The
+ * heap used by the previous item attributes (two dates, a rectangle array per
+ * item and a reference per color and font) is compared with the compact
+ * attributes (two longs, an offset in the packed bounds and a reference to a
+ * shared style). The heap used by the whole planner is also printed.
+ * <p>
+ * Run with a fixed heap (e.g.: -Xms512m -Xmx512m) to get stable numbers.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class PlannerMemoryBenchmark {
+
+    /**
+     * The attributes previously hold by each item.
+     */
+    private static class LegacyItemState {
+        Color background;
+        Color borderColor;
+        Rectangle[] bounds;
+        Date endTime;
+        Font font;
+        Color foreground;
+        Date startTime;
+    }
+
+    /**
+     * The attributes hold by each item.
+     */
+    private static class CompactItemState {
+        int boundsCount;
+        int boundsOffset;
+        long endTime;
+        long startTime;
+        Object style;
+    }
+
+    private static final int ITEM_COUNT = 100000;
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        Display display = new Display();
+        Shell shell = new Shell(display);
+        shell.setLayout(new FillLayout());
+        shell.setSize(1200, 900);
+        Color[] colors = new Color[] {
+                display.getSystemColor(SWT.COLOR_RED),
+                display.getSystemColor(SWT.COLOR_GREEN),
+                display.getSystemColor(SWT.COLOR_BLUE),
+                display.getSystemColor(SWT.COLOR_YELLOW) };
+
+        // Generate the same time ranges for both representations.
+        Random random = new Random(1234);
+        Calendar cal = Calendar.getInstance();
+        long[] starts = new long[ITEM_COUNT];
+        long[] ends = new long[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            cal.setTimeInMillis(System.currentTimeMillis());
+            cal.add(Calendar.MINUTE, random.nextInt(365 * 24 * 4) * 15);
+            starts[i] = cal.getTimeInMillis();
+            cal.add(Calendar.MINUTE, 30 + random.nextInt(8) * 15);
+            ends[i] = cal.getTimeInMillis();
+        }
+
+        // Previous representation: one date per time and one rectangle per
+        // bound.
+        long before = usedHeap();
+        LegacyItemState[] states = new LegacyItemState[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            LegacyItemState state = new LegacyItemState();
+            state.startTime = new Date(starts[i]);
+            state.endTime = new Date(ends[i]);
+            state.bounds = new Rectangle[] { new Rectangle(i, i, 100, 40) };
+            state.background = colors[i % colors.length];
+            state.borderColor = colors[(i + 1) % colors.length];
+            state.foreground = colors[(i + 2) % colors.length];
+            states[i] = state;
+        }
+        long legacy = usedHeap() - before;
+        System.out.println(String.format("previous representation: %d bytes, %d bytes/item", Long.valueOf(legacy), Long.valueOf(legacy / ITEM_COUNT)));
+        states = null;
+
+        // Compact representation: the bounds are packed in a single array and
+        // the colors are shared.
+        before = usedHeap();
+        Object[] styles = new Object[] { new Object(), new Object(), new Object(), new Object() };
+        CompactItemState[] compactStates = new CompactItemState[ITEM_COUNT];
+        int[] packedBounds = new int[ITEM_COUNT * 4];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            CompactItemState state = new CompactItemState();
+            state.startTime = starts[i];
+            state.endTime = ends[i];
+            state.boundsOffset = i * 4;
+            state.boundsCount = 1;
+            packedBounds[i * 4] = i;
+            packedBounds[i * 4 + 1] = i;
+            packedBounds[i * 4 + 2] = 100;
+            packedBounds[i * 4 + 3] = 40;
+            state.style = styles[i % styles.length];
+            compactStates[i] = state;
+        }
+        long compact = usedHeap() - before;
+        System.out.println(String.format("compact representation: %d bytes, %d bytes/item", Long.valueOf(compact), Long.valueOf(compact / ITEM_COUNT)));
+        compactStates = null;
+        packedBounds = null;
+
+        // Planner items, each item is layout once.
+        before = usedHeap();
+        Planner planner = new Planner(shell, SWT.NONE);
+        planner.setLayoutThreshold(Integer.MAX_VALUE);
+        planner.beginUpdate();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            PlannerItem item = new PlannerItem(planner, SWT.NONE);
+            item.update("Event " + i, new Date(starts[i]), new Date(ends[i]), colors[i % colors.length], colors[(i + 1) % colors.length], colors[(i + 2)
+                    % colors.length], null);
+        }
+        planner.endUpdate();
+        long used = usedHeap() - before;
+        System.out.println(String.format("planner: %d bytes, %d bytes/item (including the item text and widget state)", Long.valueOf(used),
+                Long.valueOf(used / ITEM_COUNT)));
+
+        shell.dispose();
+        display.dispose();
+    }
+
+}
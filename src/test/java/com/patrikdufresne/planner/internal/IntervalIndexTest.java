@@ -0,0 +1,100 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntervalIndexTest {
+
+    /**
+     * Reference implementation: check every time range.
+     */
+    private static int[] linearQuery(long[] starts, long[] ends, long from, long to) {
+        int[] result = new int[starts.length];
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] != Long.MIN_VALUE && starts[i] <= ends[i] && from < ends[i] && starts[i] < to) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Check a query on an empty index.
+     */
+    @Test
+    public void testEmpty() {
+        IntervalIndex index = new IntervalIndex(new long[0], new long[0]);
+        assertEquals(0, index.size());
+        assertEquals(0, index.query(0, 100).length);
+    }
+
+    /**
+     * Check the undefined and invalid time ranges are ignored.
+     */
+    @Test
+    public void testInvalid() {
+        long[] starts = new long[] { Long.MIN_VALUE, 10, 5, 0 };
+        long[] ends = new long[] { 20, 5, 5, 100 };
+        IntervalIndex index = new IntervalIndex(starts, ends);
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[] { 2, 3 }, index.query(0, 10));
+        assertArrayEquals(new int[] { 3 }, index.query(5, 10));
+    }
+
+    /**
+     * Check a long time range starting before the queried time range.
+     */
+    @Test
+    public void testLongTimeRange() {
+        long[] starts = new long[] { 50, 0, 60, 70 };
+        long[] ends = new long[] { 55, 1000, 65, 75 };
+        IntervalIndex index = new IntervalIndex(starts, ends);
+        assertArrayEquals(new int[] { 1 }, index.query(500, 600));
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.query(52, 62));
+    }
+
+    /**
+     * Compare the queries with a linear scan using random time ranges.
+     */
+    @Test
+    public void testRandom() {
+        Random random = new Random(1234);
+        for (int run = 0; run < 200; run++) {
+            int count = random.nextInt(300);
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = random.nextInt(1000);
+                // Mostly short time range with a few long ones.
+                ends[i] = starts[i] + (random.nextInt(10) == 0 ? random.nextInt(1000) : random.nextInt(20));
+            }
+            IntervalIndex index = new IntervalIndex(starts, ends);
+            for (int q = 0; q < 50; q++) {
+                long from = random.nextInt(1100) - 50;
+                long to = from + random.nextInt(100);
+                assertArrayEquals(linearQuery(starts, ends, from, to), index.query(from, to));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.junit.Test;
+
+import com.patrikdufresne.planner.Planner;
+import com.patrikdufresne.planner.PlannerItem;
+
+public class PlannerTest extends AbstractSWTTestCase {
+
+    /**
+     * Create a new item in the planner.
+     */
+    public static PlannerItem createItem(Planner planner, Date start, int hours) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.add(Calendar.HOUR_OF_DAY, hours);
+        PlannerItem item = new PlannerItem(planner, SWT.NONE);
+        item.setStartTime(start);
+        item.setEndTime(cal.getTime());
+        return item;
+    }
+
+    /**
+     * Check the time at the location of an item is the item start time.
+     */
+    @Test
+    public void testGetTime() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        cal.add(Calendar.DATE, 1);
+        cal.add(Calendar.HOUR_OF_DAY, 9);
+        PlannerItem item = createItem(planner, cal.getTime(), 1);
+        Rectangle bound = item.getBounds()[0];
+        assertEquals(cal.getTime(), planner.getTime(new Point(bound.x + 1, bound.y + 1)));
+        assertNull(planner.getTime(new Point(0, 0)));
+    }
+
+    /**
+     * Check that the items are layout once the outermost update ends.
+     */
+    @Test
+    public void testBeginEndUpdate() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+
+        planner.beginUpdate();
+        planner.beginUpdate();
+        PlannerItem item = createItem(planner, start, 2);
+        assertNull(item.getBounds());
+        planner.endUpdate();
+        assertNull(item.getBounds());
+        planner.endUpdate();
+
+        assertNotNull(item.getBounds());
+        assertEquals(1, item.getBounds().length);
+
+        // Extra call are ignored.
+        planner.endUpdate();
+    }
+
+    /**
+     * Check the items of a time range are found after the items are created,
+     * moved and disposed.
+     */
+    @Test
+    public void testGetItems() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        cal.add(Calendar.HOUR_OF_DAY, 9);
+        Date nine = cal.getTime();
+        cal.add(Calendar.HOUR_OF_DAY, 1);
+        Date ten = cal.getTime();
+        cal.add(Calendar.HOUR_OF_DAY, 2);
+        Date noon = cal.getTime();
+        PlannerItem item1 = createItem(planner, nine, 2);
+        PlannerItem item2 = createItem(planner, noon, 1);
+        PlannerItem item3 = createItem(planner, ten, 1);
+        assertArrayEquals(new PlannerItem[] { item1, item3 }, planner.getItems(nine, noon));
+        assertArrayEquals(new PlannerItem[] { item1, item2, item3 }, planner.getItems(nine, new Date(noon.getTime() + 1)));
+        assertEquals(0, planner.getItems(noon, noon).length);
+
+        // Move an item
+        item2.setStartTime(nine);
+        assertArrayEquals(new PlannerItem[] { item1, item2 }, planner.getItems(nine, ten));
+
+        // Dispose items
+        item3.dispose();
+        assertArrayEquals(new PlannerItem[] { item1, item2 }, planner.getItems(nine, noon));
+        item1.dispose();
+        assertArrayEquals(new PlannerItem[] { item2 }, planner.getItems(nine, noon));
+        PlannerItem item4 = createItem(planner, nine, 1);
+        assertArrayEquals(new PlannerItem[] { item2, item4 }, planner.getItems(nine, noon));
+    }
+
+    /**
+     * Check the overlapping items are found.
+     */
+    @Test
+    public void testGetOverlapping() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+        PlannerItem item1 = createItem(planner, start, 2);
+        PlannerItem item2 = createItem(planner, start, 1);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.add(Calendar.HOUR_OF_DAY, 2);
+        PlannerItem item3 = createItem(planner, cal.getTime(), 1);
+        assertArrayEquals(new PlannerItem[] { item2 }, planner.getOverlapping(item1));
+        assertArrayEquals(new PlannerItem[] { item1 }, planner.getOverlapping(item2));
+        assertEquals(0, planner.getOverlapping(item3).length);
+
+        // Many items, the time index is created again.
+        for (int i = 0; i < 200; i++) {
+            createItem(planner, cal.getTime(), 1);
+        }
+        assertEquals(200, planner.getOverlapping(item3).length);
+        assertEquals(1, planner.getOverlapping(item1).length);
+    }
+
+    /**
+     * Check the layout computed by a worker thread is applied once the
+     * user-interface thread is available.
+     */
+    @Test
+    public void testLayoutThreshold() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        planner.setLayoutThreshold(2);
+        planner.setLayoutExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        Date start = planner.getStartDate();
+
+        // Below the threshold
+        PlannerItem item1 = createItem(planner, start, 2);
+        assertEquals(1, item1.getBounds().length);
+
+        // Above the threshold, the bounds are updated later.
+        PlannerItem item2 = createItem(planner, start, 2);
+        assertEquals(0, item2.getBounds().length);
+        while (planner.getDisplay().readAndDispatch()) {
+            // Process the pending runnables
+        }
+        assertEquals(1, item2.getBounds().length);
+        assertFalse(item1.getBounds()[0].equals(item2.getBounds()[0]));
+    }
+
+    /**
+     * Check the rows duration change the grid height and the item bounds.
+     */
+    @Test
+    public void testRowDuration() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        PlannerItem item = createItem(planner, planner.getStartDate(), 2);
+        assertEquals(30, planner.getRowDuration());
+        assertEquals(48 * 20, planner.computeSize(SWT.DEFAULT, SWT.DEFAULT).y);
+
+        // Each row is at least 20 pixels high.
+        planner.setRowDuration(15);
+        assertEquals(15, planner.getRowDuration());
+        assertEquals(96 * 20, planner.computeSize(SWT.DEFAULT, SWT.DEFAULT).y);
+        assertTrue(item.getBounds()[0].height >= 8 * 20);
+
+        planner.setRowDuration(120);
+        assertEquals(12 * 20, planner.computeSize(SWT.DEFAULT, SWT.DEFAULT).y);
+        assertEquals(1, item.getBounds().length);
+
+        try {
+            planner.setRowDuration(45);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(120, planner.getRowDuration());
+    }
+
+    /**
+     * Check only the items sharing a cluster with a moved item are layout.
+     */
+    @Test
+    public void testMove() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+        PlannerItem item1 = createItem(planner, start, 2);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.add(Calendar.DATE, 1);
+        PlannerItem item2 = createItem(planner, cal.getTime(), 2);
+        PlannerItem item3 = createItem(planner, cal.getTime(), 3);
+        Rectangle[] bounds1 = item1.getBounds();
+        assertTrue(item2.getBounds()[0].width < item1.getBounds()[0].width);
+
+        // Move the third item later, the second item use the whole cell.
+        cal.add(Calendar.HOUR_OF_DAY, 4);
+        item3.setStartTime(cal.getTime());
+        cal.add(Calendar.HOUR_OF_DAY, 1);
+        item3.setEndTime(cal.getTime());
+        assertArrayEquals(bounds1, item1.getBounds());
+        assertEquals(item1.getBounds()[0].width, item2.getBounds()[0].width);
+        assertEquals(item1.getBounds()[0].width, item3.getBounds()[0].width);
+    }
+
+    /**
+     * Check the removal of many items at once.
+     */
+    @Test
+    public void testRemove() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+        PlannerItem[] items = new PlannerItem[5];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = createItem(planner, start, i + 1);
+        }
+        planner.setSelection(3);
+
+        planner.remove(new int[] { 4, 0, 2, 2 });
+        assertEquals(2, planner.getItemCount());
+        assertSame(items[1], planner.getItem(0));
+        assertSame(items[3], planner.getItem(1));
+        assertTrue(items[0].isDisposed());
+        assertTrue(items[2].isDisposed());
+        assertTrue(items[4].isDisposed());
+        assertEquals(1, planner.getSelectionIndex());
+    }
+
+    /**
+     * Check the update of many attributes at once.
+     */
+    @Test
+    public void testUpdate() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+        PlannerItem item = createItem(planner, start, 2);
+        Rectangle[] bounds = item.getBounds();
+
+        // Nothing changed
+        item.update(item.getText(), item.getStartTime(), item.getEndTime(), null, null, null, null);
+        assertArrayEquals(bounds, item.getBounds());
+
+        // Change the text and the time range
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.add(Calendar.HOUR_OF_DAY, 4);
+        Date end = cal.getTime();
+        item.update("Event", start, end, null, null, null, null);
+        assertEquals("Event", item.getText());
+        assertEquals(start, item.getStartTime());
+        assertEquals(end, item.getEndTime());
+        assertTrue(item.getBounds()[0].height > bounds[0].height);
+    }
+
+    /**
+     * Check the colors are kept by identity: an item doesn't keep a color
+     * with the same RGB owned by another item.
+     */
+    @Test
+    public void testColorIdentity() {
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        Date start = planner.getStartDate();
+        PlannerItem item1 = createItem(planner, start, 2);
+        PlannerItem item2 = createItem(planner, start, 2);
+        Color color1 = new Color(getShell().getDisplay(), 255, 0, 0);
+        Color color2 = new Color(getShell().getDisplay(), 255, 0, 0);
+        try {
+            item1.setBackground(color1);
+            item2.setBackground(color2);
+            assertSame(color1, item1.getBackground());
+            assertSame(color2, item2.getBackground());
+
+            // Replace the color by another one with the same RGB.
+            item1.setBackground(color2);
+            assertSame(color2, item1.getBackground());
+            color1.dispose();
+            item2.update(item2.getText(), item2.getStartTime(), item2.getEndTime(), null, color2, color2, null);
+            assertSame(color2, item2.getBorderColor());
+        } finally {
+            color1.dispose();
+            color2.dispose();
+        }
+    }
+
+    /**
+     * Check the items move with the scrolled pixels.
+     */
+    @Test
+    public void testScroll() {
+        getShell().setSize(400, 300);
+        Planner planner = new Planner(getShell(), SWT.V_SCROLL | SWT.H_SCROLL);
+        getShell().layout();
+        PlannerItem item = createItem(planner, planner.getStartDate(), 2);
+        Rectangle bounds = new Rectangle(item.getBounds()[0].x, item.getBounds()[0].y, item.getBounds()[0].width, item.getBounds()[0].height);
+
+        planner.setVerticalPixel(100);
+        assertEquals(100, planner.getVerticalPixel());
+        assertEquals(bounds.x, item.getBounds()[0].x);
+        assertEquals(bounds.y - 100, item.getBounds()[0].y);
+
+        // The items are layout at the same location
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        cal.add(Calendar.DATE, 1);
+        createItem(planner, cal.getTime(), 2);
+        assertEquals(bounds.y - 100, item.getBounds()[0].y);
+    }
+
+    /**
+     * Check an item moved after a scroll and the time at a point follow the
+     * scrolled grid.
+     */
+    @Test
+    public void testScrollThenMove() {
+        getShell().setSize(400, 300);
+        Planner planner = new Planner(getShell(), SWT.V_SCROLL | SWT.H_SCROLL);
+        getShell().layout();
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        cal.add(Calendar.DATE, 1);
+        cal.add(Calendar.HOUR_OF_DAY, 9);
+        Date nine = cal.getTime();
+        PlannerItem item = createItem(planner, nine, 1);
+        Rectangle bounds = item.getBounds()[0];
+
+        planner.setVerticalPixel(100);
+        planner.setHorizontalPixel(50);
+        Rectangle scrolled = item.getBounds()[0];
+        assertEquals(nine, planner.getTime(new Point(scrolled.x + 1, scrolled.y + 1)));
+
+        // Move the item an hour later, only its cluster is layout.
+        cal.add(Calendar.HOUR_OF_DAY, 1);
+        Date ten = cal.getTime();
+        cal.add(Calendar.HOUR_OF_DAY, 1);
+        item.update(item.getText(), ten, cal.getTime(), null, null, null, null);
+        Rectangle moved = item.getBounds()[0];
+        assertEquals(scrolled.x, moved.x);
+        assertEquals(scrolled.y + (moved.height), moved.y);
+        assertEquals(bounds.x - planner.getHorizontalPixel(), moved.x);
+        assertEquals(ten, planner.getTime(new Point(moved.x + 1, moved.y + 1)));
+    }
+
+    /**
+     * Check the SetData event is sent once when the item is requested.
+     */
+    @Test
+    public void testVirtual() {
+        Planner planner = new Planner(getShell(), SWT.VIRTUAL);
+        final List<Integer> requested = new ArrayList<Integer>();
+        planner.addListener(SWT.SetData, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                requested.add(Integer.valueOf(event.index));
+                ((PlannerItem) event.item).setText("Item " + event.index);
+            }
+        });
+
+        // One event per day for a year
+        planner.setItemCount(365);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        planner.beginUpdate();
+        for (int i = 0; i < 365; i++) {
+            Date start = cal.getTime();
+            cal.add(Calendar.HOUR_OF_DAY, 1);
+            planner.setItemTimeRange(i, start, cal.getTime());
+            cal.add(Calendar.HOUR_OF_DAY, 23);
+        }
+        planner.endUpdate();
+        assertEquals(365, planner.getItemCount());
+        assertTrue(requested.isEmpty());
+
+        // Request an item
+        PlannerItem item = planner.getItem(100);
+        assertEquals("Item 100", item.getText());
+        assertEquals(1, requested.size());
+        assertSame(item, planner.getItem(100));
+        assertEquals(1, requested.size());
+
+        // Shrink
+        planner.setItemCount(50);
+        assertEquals(50, planner.getItemCount());
+        assertTrue(item.isDisposed());
+    }
+
+}
@@ -17,12 +17,16 @@ package com.patrikdufresne.planner.test.databinding;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 
 import org.eclipse.core.databinding.observable.map.WritableMap;
 import org.eclipse.core.databinding.observable.set.WritableSet;
 import org.eclipse.jface.databinding.viewers.ObservableSetContentProvider;
+import org.eclipse.jface.viewers.ILabelProviderListener;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Display;
 import org.junit.Test;
@@ -102,4 +106,40 @@ public class ObservableMapPlannerLabelProviderTest extends AbstractDatabindingSW
 
     }
 
+    @Test
+    public void testCoalescedChanges() {
+
+        WritableMap labels = new WritableMap();
+        WritableMap start = new WritableMap();
+        WritableMap end = new WritableMap();
+        ObservableMapPlannerLabelProvider labelProvider = new ObservableMapPlannerLabelProvider(labels, start, end);
+        final List<LabelProviderChangedEvent> events = new ArrayList<LabelProviderChangedEvent>();
+        labelProvider.addListener(new ILabelProviderListener() {
+            @Override
+            public void labelProviderChanged(LabelProviderChangedEvent event) {
+                events.add(event);
+            }
+        });
+
+        // Change every maps for two elements
+        Date date = new Date();
+        for (int i = 0; i < 2; i++) {
+            Object element = Integer.valueOf(i);
+            labels.put(element, "Element " + i);
+            start.put(element, date);
+            end.put(element, date);
+        }
+        assertTrue(events.isEmpty());
+
+        // A single event is fired
+        while (Display.getDefault().readAndDispatch()) {
+            // Process the pending runnables
+        }
+        assertEquals(1, events.size());
+        assertEquals(2, events.get(0).getElements().length);
+
+        labelProvider.dispose();
+
+    }
+
 }
@@ -0,0 +1,169 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.test.databinding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.databinding.observable.set.ISetChangeListener;
+import org.eclipse.core.databinding.observable.set.SetChangeEvent;
+import org.eclipse.core.databinding.observable.set.SetDiff;
+import org.eclipse.core.databinding.observable.set.WritableSet;
+import org.eclipse.core.databinding.observable.value.WritableValue;
+import org.eclipse.core.databinding.property.INativePropertyListener;
+import org.eclipse.core.databinding.property.ISimplePropertyListener;
+import org.eclipse.core.databinding.property.value.SimpleValueProperty;
+import org.junit.Test;
+
+import com.patrikdufresne.planner.databinding.TimeRangeFilteredObservableSet;
+
+/**
+ * Test case for {@link TimeRangeFilteredObservableSet}.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+public class TimeRangeFilteredObservableSetTest extends AbstractDatabindingSWTTestCase {
+
+    /**
+     * Property returning the start or the end of an event (a Date array).
+     */
+    private static class EventTimeProperty extends SimpleValueProperty {
+
+        private int index;
+
+        EventTimeProperty(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public INativePropertyListener adaptListener(ISimplePropertyListener listener) {
+            return null;
+        }
+
+        @Override
+        protected Object doGetValue(Object source) {
+            return ((Date[]) source)[this.index];
+        }
+
+        @Override
+        protected void doSetValue(Object source, Object value) {
+            ((Date[]) source)[this.index] = (Date) value;
+        }
+
+        @Override
+        public Object getValueType() {
+            return Date.class;
+        }
+
+    }
+
+    private static Date date(int day, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2013, Calendar.JUNE, day, hour, 0);
+        return cal.getTime();
+    }
+
+    private static Date[] event(int day, int hour, int duration) {
+        return new Date[] { date(day, hour), date(day, hour + duration) };
+    }
+
+    private List<SetDiff> diffs = new ArrayList<SetDiff>();
+
+    private ISetChangeListener listener = new ISetChangeListener() {
+        @Override
+        public void handleSetChange(SetChangeEvent event) {
+            diffs.add(event.diff);
+        }
+    };
+
+    @Test
+    public void testTimeRange() {
+        // One event per day and an event during the whole month
+        WritableSet events = new WritableSet();
+        Date[][] daily = new Date[30][];
+        for (int day = 1; day <= 30; day++) {
+            events.add(daily[day - 1] = event(day, 9, 1));
+        }
+        Date[] month = new Date[] { date(1, 0), date(30, 0) };
+        events.add(month);
+
+        WritableValue start = new WritableValue(date(2, 0), Date.class);
+        WritableValue end = new WritableValue(date(9, 0), Date.class);
+        TimeRangeFilteredObservableSet set = new TimeRangeFilteredObservableSet(events, start, end, new EventTimeProperty(0), new EventTimeProperty(1));
+        set.addSetChangeListener(this.listener);
+        assertEquals(8, set.size());
+        assertTrue(set.contains(month));
+        assertTrue(set.contains(daily[1]));
+
+        // Move to the next week: one incremental diff
+        start.setValue(date(9, 0));
+        end.setValue(date(16, 0));
+        Set<Object> additions = new HashSet<Object>();
+        Set<Object> removals = new HashSet<Object>();
+        for (SetDiff diff : this.diffs) {
+            additions.addAll(diff.getAdditions());
+            removals.addAll(diff.getRemovals());
+        }
+        assertEquals(7, additions.size());
+        assertEquals(7, removals.size());
+        assertTrue(additions.contains(daily[8]));
+        assertTrue(removals.contains(daily[1]));
+        assertEquals(8, set.size());
+        this.diffs.clear();
+
+        // Elements added to the observed set
+        Date[] event = event(10, 13, 2);
+        events.add(event);
+        assertEquals(1, this.diffs.size());
+        assertTrue(this.diffs.get(0).getAdditions().contains(event));
+        assertTrue(set.contains(event));
+        events.add(event(20, 13, 2));
+        assertEquals(1, this.diffs.size());
+        this.diffs.clear();
+
+        // Elements removed from the observed set
+        events.remove(daily[9]);
+        assertEquals(1, this.diffs.size());
+        assertTrue(this.diffs.get(0).getRemovals().contains(daily[9]));
+        this.diffs.clear();
+
+        // Many elements added outside of the time range
+        for (int i = 0; i < 200; i++) {
+            events.add(event(25, 9, 1));
+        }
+        assertEquals(0, this.diffs.size());
+        start.setValue(date(23, 0));
+        end.setValue(date(30, 0));
+        assertEquals(7 + 1 + 200, set.size());
+        assertTrue(!set.contains(event) && !set.contains(daily[9]));
+
+        // Undefined time range
+        start.setValue(null);
+        assertEquals(0, set.size());
+
+        set.dispose();
+    }
+
+}
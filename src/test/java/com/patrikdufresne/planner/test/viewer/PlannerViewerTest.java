@@ -16,13 +16,21 @@
 package com.patrikdufresne.planner.test.viewer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
 
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.swt.SWT;
 import org.junit.Test;
@@ -30,7 +38,12 @@ import org.junit.Test;
 import com.patrikdufresne.planner.Planner;
 import com.patrikdufresne.planner.PlannerItem;
 import com.patrikdufresne.planner.test.databinding.AbstractDatabindingSWTTestCase;
+import com.patrikdufresne.planner.viewer.IRecurrenceProvider;
+import com.patrikdufresne.planner.viewer.ITimeRangeContentProvider;
+import com.patrikdufresne.planner.viewer.Occurrence;
+import com.patrikdufresne.planner.viewer.PlannerLabelProvider;
 import com.patrikdufresne.planner.viewer.PlannerViewer;
+import com.patrikdufresne.planner.viewer.RecurrenceRule;
 
 public class PlannerViewerTest extends AbstractDatabindingSWTTestCase {
 
@@ -51,6 +64,27 @@ public class PlannerViewerTest extends AbstractDatabindingSWTTestCase {
 
     }
 
+    @Test
+    public void testRemoveWithHashlookup() {
+
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        PlannerViewer viewer = new PlannerViewer(planner);
+        viewer.setUseHashlookup(true);
+        viewer.add(new Object[] { Integer.valueOf(0), Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(3) });
+        assertEquals(4, planner.getItemCount());
+
+        // Remove many objects
+        viewer.remove(new Object[] { Integer.valueOf(3), Integer.valueOf(0), Integer.valueOf(5) });
+        assertEquals(2, planner.getItemCount());
+        assertEquals(Integer.valueOf(1), planner.getItem(0).getData());
+        assertEquals(Integer.valueOf(2), planner.getItem(1).getData());
+
+        // Select using the map
+        viewer.setSelection(new StructuredSelection(Integer.valueOf(2)));
+        assertEquals(1, planner.getSelectionIndex());
+
+    }
+
     @Test
     public void testSetGetSelection() {
 
@@ -104,6 +138,29 @@ public class PlannerViewerTest extends AbstractDatabindingSWTTestCase {
 
     }
 
+    @Test
+    public void testRefresh() {
+
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        PlannerViewer viewer = new PlannerViewer(planner);
+        viewer.setContentProvider(new ArrayContentProvider());
+        List<Integer> input = new ArrayList<Integer>(Arrays.asList(Integer.valueOf(5), Integer.valueOf(1), Integer.valueOf(2)));
+        viewer.setInput(input);
+        PlannerItem[] items = planner.getItems();
+
+        // Move, remove and add elements
+        input.clear();
+        input.addAll(Arrays.asList(Integer.valueOf(2), Integer.valueOf(3), Integer.valueOf(5)));
+        viewer.refresh();
+
+        assertEquals(3, planner.getItemCount());
+        assertSame(items[2], planner.getItem(0));
+        assertEquals(Integer.valueOf(3), planner.getItem(1).getData());
+        assertSame(items[0], planner.getItem(2));
+        assertTrue(items[1].isDisposed());
+
+    }
+
     @Test
     public void testSetInput() {
 
@@ -120,4 +177,169 @@ public class PlannerViewerTest extends AbstractDatabindingSWTTestCase {
 
     }
 
+    /**
+     * Content provider returning the dates of the input within the time range.
+     */
+    private static class DateContentProvider implements ITimeRangeContentProvider {
+
+        List<Date[]> queries = new ArrayList<Date[]>();
+
+        @Override
+        public void dispose() {
+            // Nothing to dispose
+        }
+
+        @Override
+        public Object[] getElements(Object inputElement) {
+            return ((List<?>) inputElement).toArray();
+        }
+
+        @Override
+        public Object[] getElements(Object inputElement, Date start, Date end) {
+            queries.add(new Date[] { start, end });
+            List<Date> result = new ArrayList<Date>();
+            for (Object element : (List<?>) inputElement) {
+                Date date = (Date) element;
+                if (!date.before(start) && date.before(end)) {
+                    result.add(date);
+                }
+            }
+            return result.toArray();
+        }
+
+        @Override
+        public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+            // Nothing to do
+        }
+
+    }
+
+    @Test
+    public void testTimeRangeContentProvider() {
+
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        planner.setDateSelection(new Date());
+        PlannerViewer viewer = new PlannerViewer(planner);
+        DateContentProvider contentProvider = new DateContentProvider();
+        viewer.setContentProvider(contentProvider);
+
+        // One element per day, from 10 weeks before to 10 weeks after the
+        // displayed week.
+        List<Date> input = new ArrayList<Date>();
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        cal.add(Calendar.DAY_OF_MONTH, -70);
+        cal.set(Calendar.HOUR_OF_DAY, 12);
+        for (int i = 0; i < 147; i++) {
+            input.add(cal.getTime());
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        // Only the displayed week is loaded
+        viewer.setInput(input);
+        assertEquals(1, contentProvider.queries.size());
+        assertEquals(planner.getStartDate(), contentProvider.queries.get(0)[0]);
+        assertEquals(planner.getEndDate(), contentProvider.queries.get(0)[1]);
+        assertEquals(7, planner.getItemCount());
+
+        // Then the adjacent weeks
+        while (planner.getDisplay().readAndDispatch()) {
+            // Process the prefetch
+        }
+        assertEquals(2, contentProvider.queries.size());
+        assertEquals(21, planner.getItemCount());
+        PlannerItem first = planner.getItem(0);
+
+        // Display the next week: already loaded, only the following week is
+        // loaded and the items of the previous week are disposed.
+        cal.setTime(planner.getDateSelection());
+        cal.add(Calendar.DAY_OF_MONTH, 7);
+        planner.setDateSelection(cal.getTime());
+        assertEquals(2, contentProvider.queries.size());
+        while (planner.getDisplay().readAndDispatch()) {
+            // Process the prefetch
+        }
+        assertEquals(3, contentProvider.queries.size());
+        assertEquals(21, planner.getItemCount());
+        assertTrue(first.isDisposed());
+
+        // Display a week far away: the week is loaded immediately
+        cal.add(Calendar.DAY_OF_MONTH, -49);
+        planner.setDateSelection(cal.getTime());
+        assertEquals(4, contentProvider.queries.size());
+        assertEquals(7, planner.getItemCount());
+        for (PlannerItem item : planner.getItems()) {
+            Date date = (Date) item.getData();
+            assertFalse(date.before(planner.getStartDate()));
+            assertTrue(date.before(planner.getEndDate()));
+        }
+
+    }
+
+    @Test
+    public void testRecurrenceProvider() {
+
+        Planner planner = new Planner(getShell(), SWT.NONE);
+        planner.setDateSelection(new Date());
+        PlannerViewer viewer = new PlannerViewer(planner);
+        viewer.setContentProvider(new ArrayContentProvider());
+
+        // A daily meeting started ten years ago and a single event
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(planner.getStartDate());
+        cal.add(Calendar.YEAR, -10);
+        cal.set(Calendar.HOUR_OF_DAY, 9);
+        final Date start = cal.getTime();
+        cal.add(Calendar.HOUR_OF_DAY, 1);
+        final Date end = cal.getTime();
+        final RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1);
+        IRecurrenceProvider recurrenceProvider = new IRecurrenceProvider() {
+            @Override
+            public Date getEndTime(Object element) {
+                return end;
+            }
+
+            @Override
+            public RecurrenceRule getRecurrence(Object element) {
+                return "meeting".equals(element) ? rule : null;
+            }
+
+            @Override
+            public Date getStartTime(Object element) {
+                return start;
+            }
+        };
+        viewer.setLabelProvider(new PlannerLabelProvider());
+        viewer.setRecurrenceProvider(recurrenceProvider);
+        viewer.setInput(Arrays.asList("meeting", "event"));
+
+        // The occurrences of the displayed week
+        assertEquals(8, planner.getItemCount());
+        assertEquals("meeting", ((Occurrence) planner.getItem(0).getData()).getElement());
+        assertEquals("event", planner.getItem(7).getData());
+        for (int i = 0; i < 7; i++) {
+            Occurrence occurrence = (Occurrence) planner.getItem(i).getData();
+            assertFalse(occurrence.getStartTime().before(planner.getStartDate()));
+            assertEquals(occurrence.getStartTime(), planner.getItem(i).getStartTime());
+        }
+
+        // Then the adjacent weeks
+        while (planner.getDisplay().readAndDispatch()) {
+            // Process the prefetch
+        }
+        assertEquals(22, planner.getItemCount());
+
+        // Items of the displayed weeks are kept when moving to the next week
+        PlannerItem item = planner.getItem(14);
+        cal.setTime(planner.getDateSelection());
+        cal.add(Calendar.DAY_OF_MONTH, 7);
+        planner.setDateSelection(cal.getTime());
+        while (planner.getDisplay().readAndDispatch()) {
+            // Process the prefetch
+        }
+        assertEquals(22, planner.getItemCount());
+        assertFalse(item.isDisposed());
+
+    }
+
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OccurrenceCacheTest {
+
+    /**
+     * Check the least recently used week is removed.
+     */
+    @Test
+    public void testEviction() {
+        OccurrenceCache cache = new OccurrenceCache(2);
+        Occurrence[] week1 = new Occurrence[] { new Occurrence("a", 1, 2) };
+        Occurrence[] week2 = new Occurrence[] { new Occurrence("a", 8, 9) };
+        cache.put(0, "a", week1);
+        cache.put(7, "a", week2);
+        cache.put(7, "b", new Occurrence[0]);
+        assertSame(week1, cache.get(0, "a"));
+        assertEquals(2, cache.getWeekCount());
+
+        // Week 7 is the least recently used
+        cache.put(14, "a", new Occurrence[0]);
+        assertSame(week1, cache.get(0, "a"));
+        assertNull(cache.get(7, "a"));
+        assertNull(cache.get(7, "b"));
+        assertEquals(2, cache.getWeekCount());
+    }
+
+    @Test
+    public void testOccurrenceEquals() {
+        assertEquals(new Occurrence("a", 1, 2), new Occurrence("a", 1, 2));
+        assertEquals(new Occurrence("a", 1, 2).hashCode(), new Occurrence("a", 1, 2).hashCode());
+        assertFalse(new Occurrence("a", 1, 2).equals(new Occurrence("a", 3, 4)));
+        assertFalse(new Occurrence("a", 1, 2).equals(new Occurrence("b", 1, 2)));
+    }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.planner.viewer;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+
+public class RecurrenceRuleTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static long time(int year, int month, int day, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month, day, hour, 0);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Check a daily recurrence within a week.
+     */
+    @Test
+    public void testDaily() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1);
+        long[] occurrences = rule.expand(time(2013, Calendar.JUNE, 3, 9), HOUR, time(2013, Calendar.JUNE, 9, 0), time(2013, Calendar.JUNE, 16, 0));
+        assertEquals(7, occurrences.length);
+        for (int i = 0; i < 7; i++) {
+            assertEquals(time(2013, Calendar.JUNE, 9 + i, 9), occurrences[i]);
+        }
+
+        // Nothing before the first occurrence
+        occurrences = rule.expand(time(2013, Calendar.JUNE, 3, 9), HOUR, time(2013, Calendar.MAY, 26, 0), time(2013, Calendar.JUNE, 2, 0));
+        assertEquals(0, occurrences.length);
+    }
+
+    /**
+     * Check the occurrences keep the time of day over a daylight saving time
+     * change.
+     */
+    @Test
+    public void testDailyTimeOfDay() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1);
+        long[] occurrences = rule.expand(time(2013, Calendar.JANUARY, 1, 9), HOUR, time(2013, Calendar.JULY, 1, 0), time(2013, Calendar.JULY, 2, 0));
+        assertArrayEquals(new long[] { time(2013, Calendar.JULY, 1, 9) }, occurrences);
+    }
+
+    /**
+     * Check the number of occurrences is limited by the count, including when
+     * the first periods are skipped.
+     */
+    @Test
+    public void testDailyCount() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1, null, null, 10, null);
+        long[] occurrences = rule.expand(time(2013, Calendar.JUNE, 3, 9), HOUR, time(2013, Calendar.JUNE, 9, 0), time(2013, Calendar.JUNE, 16, 0));
+        assertArrayEquals(new long[] {
+                time(2013, Calendar.JUNE, 9, 9),
+                time(2013, Calendar.JUNE, 10, 9),
+                time(2013, Calendar.JUNE, 11, 9),
+                time(2013, Calendar.JUNE, 12, 9) }, occurrences);
+
+        rule = new RecurrenceRule(RecurrenceRule.DAILY, 1, null, null, 3650, null);
+        occurrences = rule.expand(time(2013, Calendar.JANUARY, 1, 9), HOUR, time(2022, Calendar.DECEMBER, 25, 0), time(2023, Calendar.JANUARY, 1, 0));
+        long last = time(2013, Calendar.JANUARY, 1, 9);
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(last);
+        cal.add(Calendar.DAY_OF_MONTH, 3649);
+        assertEquals(cal.getTimeInMillis(), occurrences[occurrences.length - 1]);
+    }
+
+    /**
+     * Check the days of the week limit a daily recurrence.
+     */
+    @Test
+    public void testDailyByDays() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1, new int[] { Calendar.SATURDAY, Calendar.SUNDAY }, null, 0, null);
+        long[] occurrences = rule.expand(time(2013, Calendar.JUNE, 3, 9), HOUR, time(2013, Calendar.JUNE, 9, 0), time(2013, Calendar.JUNE, 16, 0));
+        assertArrayEquals(new long[] { time(2013, Calendar.JUNE, 9, 9), time(2013, Calendar.JUNE, 15, 9) }, occurrences);
+    }
+
+    /**
+     * Check an occurrence starting before the time range is returned.
+     */
+    @Test
+    public void testOverlapRangeStart() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1);
+        long[] occurrences = rule.expand(time(2013, Calendar.JUNE, 3, 23), 2 * HOUR, time(2013, Calendar.JUNE, 9, 0), time(2013, Calendar.JUNE, 10, 0));
+        assertArrayEquals(new long[] { time(2013, Calendar.JUNE, 8, 23), time(2013, Calendar.JUNE, 9, 23) }, occurrences);
+    }
+
+    /**
+     * Check a recurrence ten years long is limited by the until date.
+     */
+    @Test
+    public void testUntil() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, 1, null, null, 0, new java.util.Date(time(2023, Calendar.JANUARY, 3, 9)));
+        long[] occurrences = rule.expand(time(2013, Calendar.JANUARY, 1, 9), HOUR, time(2023, Calendar.JANUARY, 1, 0), time(2023, Calendar.JANUARY, 8, 0));
+        assertArrayEquals(new long[] { time(2023, Calendar.JANUARY, 1, 9), time(2023, Calendar.JANUARY, 2, 9), time(2023, Calendar.JANUARY, 3, 9) },
+                occurrences);
+    }
+
+    /**
+     * Check a weekly recurrence with an interval and a count. The first week
+     * is partial.
+     */
+    @Test
+    public void testWeekly() {
+        // Start on Wednesday June 5th 2013
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.WEEKLY, 2, new int[] { Calendar.MONDAY, Calendar.WEDNESDAY, Calendar.FRIDAY }, null, 5, null);
+        long start = time(2013, Calendar.JUNE, 5, 9);
+        assertArrayEquals(new long[] { time(2013, Calendar.JUNE, 5, 9), time(2013, Calendar.JUNE, 7, 9) },
+                rule.expand(start, HOUR, time(2013, Calendar.JUNE, 2, 0), time(2013, Calendar.JUNE, 9, 0)));
+        assertEquals(0, rule.expand(start, HOUR, time(2013, Calendar.JUNE, 9, 0), time(2013, Calendar.JUNE, 16, 0)).length);
+        assertArrayEquals(new long[] { time(2013, Calendar.JUNE, 17, 9), time(2013, Calendar.JUNE, 19, 9), time(2013, Calendar.JUNE, 21, 9) },
+                rule.expand(start, HOUR, time(2013, Calendar.JUNE, 16, 0), time(2013, Calendar.JUNE, 23, 0)));
+        assertEquals(0, rule.expand(start, HOUR, time(2013, Calendar.JUNE, 30, 0), time(2013, Calendar.JULY, 7, 0)).length);
+    }
+
+    /**
+     * Check the months without the day of month are skipped.
+     */
+    @Test
+    public void testMonthly() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.MONTHLY, 1);
+        long[] occurrences = rule.expand(time(2013, Calendar.JANUARY, 31, 9), HOUR, time(2013, Calendar.JANUARY, 1, 0), time(2013, Calendar.JUNE, 1, 0));
+        assertArrayEquals(new long[] { time(2013, Calendar.JANUARY, 31, 9), time(2013, Calendar.MARCH, 31, 9), time(2013, Calendar.MAY, 31, 9) },
+                occurrences);
+    }
+
+    /**
+     * Check a yearly recurrence on the Mondays of a month.
+     */
+    @Test
+    public void testYearlyByMonthByDay() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.YEARLY, 1, new int[] { Calendar.MONDAY }, new int[] { 9 }, 0, null);
+        long[] occurrences = rule.expand(time(2013, Calendar.JANUARY, 1, 9), HOUR, time(2020, Calendar.JANUARY, 1, 0), time(2021, Calendar.JANUARY, 1, 0));
+        assertArrayEquals(new long[] {
+                time(2020, Calendar.SEPTEMBER, 7, 9),
+                time(2020, Calendar.SEPTEMBER, 14, 9),
+                time(2020, Calendar.SEPTEMBER, 21, 9),
+                time(2020, Calendar.SEPTEMBER, 28, 9) }, occurrences);
+    }
+
+    @Test
+    public void testEquals() {
+        RecurrenceRule rule1 = new RecurrenceRule(RecurrenceRule.WEEKLY, 1, new int[] { Calendar.MONDAY, Calendar.FRIDAY }, null, 0, null);
+        RecurrenceRule rule2 = new RecurrenceRule(RecurrenceRule.WEEKLY, 1, new int[] { Calendar.FRIDAY, Calendar.MONDAY }, null, 0, null);
+        assertEquals(rule1, rule2);
+        assertEquals(rule1.hashCode(), rule2.hashCode());
+        assertFalse(rule1.equals(new RecurrenceRule(RecurrenceRule.WEEKLY, 2, new int[] { Calendar.MONDAY, Calendar.FRIDAY }, null, 0, null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        new RecurrenceRule(RecurrenceRule.DAILY, 0);
+    }
+
+}